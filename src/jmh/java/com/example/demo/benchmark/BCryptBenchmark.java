@@ -0,0 +1,45 @@
+package com.example.demo.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import com.example.demo.security.UpgradingBCryptPasswordEncoder;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BCryptBenchmark {
+
+	@Param({ "8", "10", "12" })
+	private int strength;
+
+	private BCryptPasswordEncoder encoder;
+
+	private String hash;
+
+	@Setup
+	public void createEncoder() {
+		encoder = new UpgradingBCryptPasswordEncoder(strength);
+		hash = encoder.encode("benchmark_password");
+	}
+
+	@Benchmark
+	public String encode() {
+		return encoder.encode("benchmark_password");
+	}
+
+	@Benchmark
+	public boolean matches() {
+		return encoder.matches("benchmark_password", hash);
+	}
+}
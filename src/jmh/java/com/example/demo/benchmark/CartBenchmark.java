@@ -0,0 +1,70 @@
+package com.example.demo.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+
+/**
+ * Cost of changing the quantity of the last line of a cart with {@code cartSize}
+ * distinct items. Each invocation applies {@link #CHANGES} changes to that line and
+ * then one opposite change that puts it back, so the cart neither grows nor loses the
+ * line; the extra change adds about {@code 1 / CHANGES} to the score.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CartBenchmark {
+
+	private static final int CHANGES = 1000;
+
+	@Param({ "1", "10", "100" })
+	private int cartSize;
+
+	@Param({ "1", "500" })
+	private int quantity;
+
+	private Item last;
+
+	private Cart cart;
+
+	@Setup(Level.Iteration)
+	public void createCart() {
+		Item[] items = Fixtures.items(cartSize);
+		last = items[cartSize - 1];
+		cart = Fixtures.cart(items, cartSize);
+		// enough on the last line that a whole batch of removals never takes it out
+		cart.addItem(last, CHANGES * quantity);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(CHANGES)
+	public Cart addItem() {
+		for (int i = 0; i < CHANGES; i++) {
+			cart.addItem(last, quantity);
+		}
+		cart.removeItem(last, CHANGES * quantity);
+		return cart;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(CHANGES)
+	public Cart removeItem() {
+		for (int i = 0; i < CHANGES; i++) {
+			cart.removeItem(last, quantity);
+		}
+		cart.addItem(last, CHANGES * quantity);
+		return cart;
+	}
+}
@@ -0,0 +1,47 @@
+package com.example.demo.benchmark;
+
+import java.math.BigDecimal;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.User;
+
+final class Fixtures {
+
+	private Fixtures() {
+	}
+
+	static Item item(long id) {
+		Item item = new Item();
+		item.setId(id);
+		item.setName("Item " + id);
+		item.setDescription("Description of item " + id);
+		item.setPrice(BigDecimal.valueOf(100 + id, 2));
+		return item;
+	}
+
+	static Item[] items(int count) {
+		Item[] items = new Item[count];
+		for (int i = 0; i < count; i++) {
+			items[i] = item(i + 1);
+		}
+		return items;
+	}
+
+	/**
+	 * Cart holding {@code lines} distinct items with a quantity of three each.
+	 */
+	static Cart cart(Item[] items, int lines) {
+		User user = new User();
+		user.setId(1L);
+		user.setUsername("benchmark");
+
+		Cart cart = new Cart();
+		cart.setId(1L);
+		user.setCart(cart);
+		for (int i = 0; i < lines; i++) {
+			cart.addItem(items[i], 3);
+		}
+		return cart;
+	}
+}
@@ -0,0 +1,61 @@
+package com.example.demo.benchmark;
+
+import static com.auth0.jwt.algorithms.Algorithm.HMAC512;
+import static com.example.demo.security.SecurityConstants.EXPIRATION_TIME;
+import static com.example.demo.security.SecurityConstants.SECRET;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
+import com.example.demo.security.VerifiedTokenCache;
+
+/**
+ * Token signing as done by {@code JWTAuthenticationFilter} and verification as done by
+ * {@code JWTAuthenticationVerificationFilter}, with and without the verified token cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JwtBenchmark {
+
+	private JWTVerifier verifier;
+
+	private VerifiedTokenCache verifiedTokenCache;
+
+	private String token;
+
+	@Setup
+	public void createToken() {
+		verifier = JWT.require(HMAC512(SECRET.getBytes())).build();
+		verifiedTokenCache = new VerifiedTokenCache(10_000);
+		token = sign();
+	}
+
+	@Benchmark
+	public String sign() {
+		return JWT.create()
+				.withSubject("benchmark")
+				.withExpiresAt(new Date(System.currentTimeMillis() + EXPIRATION_TIME))
+				.sign(HMAC512(SECRET.getBytes()));
+	}
+
+	@Benchmark
+	public String verify() {
+		return verifier.verify(token).getSubject();
+	}
+
+	@Benchmark
+	public String verifyCached() {
+		return verifiedTokenCache.verify(token);
+	}
+}
@@ -0,0 +1,36 @@
+package com.example.demo.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.UserOrder;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OrderBenchmark {
+
+	@Param({ "1", "10", "100" })
+	private int cartSize;
+
+	private Cart cart;
+
+	@Setup
+	public void createCart() {
+		cart = Fixtures.cart(Fixtures.items(cartSize), cartSize);
+	}
+
+	@Benchmark
+	public UserOrder createFromCart() {
+		return UserOrder.createFromCart(cart);
+	}
+}
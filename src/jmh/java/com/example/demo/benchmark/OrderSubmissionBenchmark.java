@@ -0,0 +1,166 @@
+package com.example.demo.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.SareetaApplication;
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.responses.OrderView;
+import com.example.demo.services.CartService;
+import com.example.demo.services.OrderService;
+import com.example.demo.services.UserSummary;
+
+/**
+ * Order submission against the in-memory database: one order with {@code lines} order
+ * items plus clearing the cart lines. {@code batchSize=1} turns JDBC batching off and
+ * is the baseline for the configured batch size.
+ * <p>
+ * A submission empties its cart, so every measured iteration submits the carts of
+ * {@link #SUBMISSIONS} users once each, all filled before the iteration starts, and is
+ * timed as one shot. Besides the time, the number of JDBC statements prepared per
+ * submission is reported as the secondary result {@code statementsPerSubmission};
+ * against the in-process H2 database that count, not the time, is where batching shows,
+ * since every statement is a network round trip against a real database server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(batchSize = OrderSubmissionBenchmark.SUBMISSIONS)
+@Measurement(batchSize = OrderSubmissionBenchmark.SUBMISSIONS)
+public class OrderSubmissionBenchmark {
+
+	static final int SUBMISSIONS = 50;
+
+	@Param({ "1", "50" })
+	private int batchSize;
+
+	@Param({ "5", "40" })
+	private int lines;
+
+	private ConfigurableApplicationContext context;
+
+	private CartService cartService;
+
+	private OrderService orderService;
+
+	private List<UserSummary> users;
+
+	private List<Item> items;
+
+	private Statistics statistics;
+
+	private int next;
+
+	/**
+	 * Statements prepared per submission in the current iteration.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Statements {
+
+		private long statements;
+
+		private long submissions;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			statements = 0;
+			submissions = 0;
+		}
+
+		public double statementsPerSubmission() {
+			return submissions == 0 ? 0 : (double) statements / submissions;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void startApplication() {
+		context = SpringApplication.run(SareetaApplication.class,
+				"--spring.main.web-application-type=none",
+				"--spring.main.banner-mode=off",
+				"--logging.level.root=WARN",
+				"--spring.jpa.properties.hibernate.generate_statistics=true",
+				"--spring.jpa.properties.hibernate.jdbc.batch_size=" + batchSize);
+		statistics = context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+		cartService = context.getBean(CartService.class);
+		orderService = context.getBean(OrderService.class);
+
+		List<Item> newItems = new ArrayList<>();
+		for (int i = 0; i < lines; i++) {
+			Item item = new Item();
+			item.setName("Benchmark Widget " + i);
+			item.setDescription("Seeded for the order submission benchmark");
+			item.setPrice(BigDecimal.valueOf(100 + i, 2));
+			newItems.add(item);
+		}
+		items = context.getBean(ItemRepository.class).saveAll(newItems);
+
+		CartRepository cartRepository = context.getBean(CartRepository.class);
+		UserRepository userRepository = context.getBean(UserRepository.class);
+		TransactionTemplate transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+		users = new ArrayList<>();
+		for (int i = 0; i < SUBMISSIONS; i++) {
+			String username = "benchmark-" + i;
+			users.add(transactionTemplate.execute(status -> {
+				Cart cart = cartRepository.save(new Cart());
+				User newUser = new User();
+				newUser.setUsername(username);
+				newUser.setPassword("unused");
+				newUser.setCart(cart);
+				return UserSummary.of(userRepository.save(newUser));
+			}));
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void fillCarts() {
+		for (UserSummary user : users) {
+			cartService.applyAll(user, cart -> items.forEach(item -> cart.addItem(item, 2)));
+		}
+		next = 0;
+	}
+
+	@Benchmark
+	public Optional<OrderView> submit(Statements counters) {
+		long before = statistics.getPrepareStatementCount();
+		Optional<OrderView> order = orderService.submit(users.get(next++), null);
+		counters.statements += statistics.getPrepareStatementCount() - before;
+		counters.submissions++;
+		return order;
+	}
+
+	@TearDown(Level.Trial)
+	public void stopApplication() {
+		context.close();
+	}
+}
@@ -0,0 +1,58 @@
+package com.example.demo.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.responses.CartView;
+import com.example.demo.model.responses.OrderView;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * JSON serialization of the cart and order response bodies, using an
+ * {@link ObjectMapper} configured like the one Spring Boot creates. The bodies are
+ * the {@link CartView} and {@link OrderView} the controllers return.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerializationBenchmark {
+
+	@Param({ "1", "10", "100" })
+	private int cartSize;
+
+	private ObjectMapper objectMapper;
+
+	private CartView cart;
+
+	private OrderView order;
+
+	@Setup
+	public void createBodies() {
+		objectMapper = Jackson2ObjectMapperBuilder.json().build();
+		Cart entity = Fixtures.cart(Fixtures.items(cartSize), cartSize);
+		cart = CartView.from(entity);
+		order = OrderView.from(UserOrder.createFromCart(entity));
+	}
+
+	@Benchmark
+	public byte[] serializeCart() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(cart);
+	}
+
+	@Benchmark
+	public byte[] serializeOrder() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(order);
+	}
+}
@@ -0,0 +1,104 @@
+package com.example.demo.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Minimal blocking HTTP client on top of {@link HttpURLConnection}. Response bodies are
+ * always read to the end so the JDK can reuse the keep-alive connection.
+ */
+class ApiClient {
+
+	static final class Response {
+
+		final int status;
+
+		final String body;
+
+		final String authorization;
+
+		/** Seconds from the {@code Retry-After} header of a 503, 0 when absent. */
+		final long retryAfterSeconds;
+
+		Response(int status, String body, String authorization, long retryAfterSeconds) {
+			this.status = status;
+			this.body = body;
+			this.authorization = authorization;
+			this.retryAfterSeconds = retryAfterSeconds;
+		}
+
+		boolean isSuccess() {
+			return status >= 200 && status < 300;
+		}
+
+		boolean isOverloaded() {
+			return status == 503;
+		}
+	}
+
+	private final String baseUrl;
+
+	ApiClient(String baseUrl) {
+		this.baseUrl = baseUrl;
+	}
+
+	Response get(String path, String token) throws IOException {
+		return send("GET", path, token, null, null);
+	}
+
+	Response post(String path, String token, String json) throws IOException {
+		return send("POST", path, token, json, null);
+	}
+
+	Response post(String path, String token, String json, Map<String, String> headers) throws IOException {
+		return send("POST", path, token, json, headers);
+	}
+
+	private Response send(String method, String path, String token, String json, Map<String, String> headers)
+			throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+		connection.setRequestMethod(method);
+		connection.setConnectTimeout(5_000);
+		connection.setReadTimeout(30_000);
+		if (token != null) {
+			connection.setRequestProperty("Authorization", token);
+		}
+		if (headers != null) {
+			headers.forEach(connection::setRequestProperty);
+		}
+		if (json != null) {
+			byte[] payload = json.getBytes(StandardCharsets.UTF_8);
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Type", "application/json");
+			connection.setFixedLengthStreamingMode(payload.length);
+			try (OutputStream out = connection.getOutputStream()) {
+				out.write(payload);
+			}
+		}
+
+		int status = connection.getResponseCode();
+		InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+		String body = in == null ? "" : readFully(in);
+		String retryAfter = connection.getHeaderField("Retry-After");
+		return new Response(status, body, connection.getHeaderField("Authorization"),
+				retryAfter == null ? 0 : Long.parseLong(retryAfter.trim()));
+	}
+
+	private static String readFully(InputStream in) throws IOException {
+		try (InputStream stream = in) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = stream.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+			return new String(out.toByteArray(), StandardCharsets.UTF_8);
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package com.example.demo.loadtest;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Per-endpoint latency histograms (in microseconds) and error counts. Each worker
+ * thread owns one recorder, so recording never contends; recorders are merged once the
+ * run is over.
+ */
+class LatencyRecorder {
+
+	private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+	private final Map<String, Histogram> latencies = new TreeMap<>();
+
+	private final Map<String, Long> errors = new TreeMap<>();
+
+	void record(String endpoint, long elapsedNanos, boolean success) {
+		long micros = Math.min(TimeUnit.NANOSECONDS.toMicros(elapsedNanos), HIGHEST_TRACKABLE_MICROS);
+		histogram(endpoint).recordValue(micros);
+		if (!success) {
+			errors.merge(endpoint, 1L, Long::sum);
+		}
+	}
+
+	void add(LatencyRecorder other) {
+		other.latencies.forEach((endpoint, histogram) -> histogram(endpoint).add(histogram));
+		other.errors.forEach((endpoint, count) -> errors.merge(endpoint, count, Long::sum));
+	}
+
+	Map<String, Histogram> latencies() {
+		return latencies;
+	}
+
+	long errors(String endpoint) {
+		return errors.getOrDefault(endpoint, 0L);
+	}
+
+	private Histogram histogram(String endpoint) {
+		return latencies.computeIfAbsent(endpoint, e -> new Histogram(HIGHEST_TRACKABLE_MICROS, 3));
+	}
+}
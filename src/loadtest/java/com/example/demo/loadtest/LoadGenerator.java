@@ -0,0 +1,381 @@
+package com.example.demo.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.example.demo.SareetaApplication;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.services.ItemCatalog;
+
+/**
+ * Boots {@link SareetaApplication} on a random port against the in-memory database and
+ * drives it over HTTP with a fixed mix of signup, login, catalog, cart and order traffic.
+ * Every worker thread plays one shopper at a time. After the warmup, latencies are
+ * recorded per endpoint and reported as p50/p99/p999 and throughput.
+ *
+ * <pre>
+ * mvn -Ploadtest verify -DskipTests -Dloadtest.args="--users=32 --duration=120"
+ * </pre>
+ *
+ * Options: {@code --users} (concurrent workers), {@code --duration} and {@code --warmup}
+ * (seconds), {@code --items} (extra catalog items to seed), {@code --think-time}
+ * (milliseconds each shopper pauses between requests) and {@code --report-dir} (where
+ * the full percentile distributions are written). Any other {@code --key=value}
+ * argument is passed on to Spring, e.g. {@code --security.bcrypt.threads=4}.
+ * <p>
+ * To compare request execution modes, run the same mix once per mode with many more
+ * shoppers than Tomcat has worker threads (Java 21+ for the virtual one):
+ *
+ * <pre>
+ * mvn -Ploadtest verify -DskipTests -Dloadtest.args="--users=1000 --think-time=50 --server.request-execution=platform"
+ * mvn -Ploadtest verify -DskipTests -Dloadtest.args="--users=1000 --think-time=50 --server.request-execution=virtual"
+ * </pre>
+ */
+public class LoadGenerator {
+
+	private static final String PASSWORD = "loadtest-password";
+
+	/** Relative weight of each operation in the traffic mix. */
+	private static final Object[][] MIX = {
+			{ "item.list", 10 },
+			{ "item.page", 15 },
+			{ "item.get", 15 },
+			{ "item.search", 10 },
+			{ "cart.add", 20 },
+			{ "cart.remove", 10 },
+			{ "order.submit", 5 },
+			{ "order.history", 10 },
+			{ "user.login", 3 },
+			{ "user.signup", 2 },
+	};
+
+	private static final AtomicLong USER_SEQUENCE = new AtomicLong();
+
+	/** Cursor of the following page; ids have gaps, so it can not be computed. */
+	private static final Pattern NEXT_CURSOR = Pattern.compile("\"nextCursor\":(\\d+)");
+
+	private static final String RUN_ID = UUID.randomUUID().toString().substring(0, 8);
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new HashMap<>();
+		List<String> springArgs = new ArrayList<>();
+		springArgs.add("--server.port=0");
+		springArgs.add("--spring.main.banner-mode=off");
+		for (String arg : args) {
+			String option = arg.startsWith("--") ? arg.substring(2) : arg;
+			String key = option.contains("=") ? option.substring(0, option.indexOf('=')) : option;
+			switch (key) {
+			case "users":
+			case "duration":
+			case "warmup":
+			case "items":
+			case "think-time":
+			case "report-dir":
+				options.put(key, option.substring(option.indexOf('=') + 1));
+				break;
+			default:
+				springArgs.add(arg);
+			}
+		}
+		int users = Integer.parseInt(options.getOrDefault("users", "16"));
+		long durationSeconds = Long.parseLong(options.getOrDefault("duration", "60"));
+		long warmupSeconds = Long.parseLong(options.getOrDefault("warmup", "10"));
+		int seedItems = Integer.parseInt(options.getOrDefault("items", "1000"));
+		long thinkTimeMillis = Long.parseLong(options.getOrDefault("think-time", "0"));
+		File reportDir = new File(options.getOrDefault("report-dir", "target/loadtest"));
+
+		ConfigurableApplicationContext context = SpringApplication.run(SareetaApplication.class,
+				springArgs.toArray(new String[0]));
+		try {
+			List<Long> itemIds = seedCatalog(context, seedItems);
+			int port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+			ApiClient client = new ApiClient("http://localhost:" + port);
+
+			System.out.printf("%nLoad test: %d users, %ds warmup, %ds measured, %d items, %dms think time, %s threads%n",
+					users, warmupSeconds, durationSeconds, itemIds.size(), thinkTimeMillis,
+					context.getEnvironment().getProperty("server.request-execution", "platform"));
+
+			long measureFrom = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+			long deadline = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+			ExecutorService workers = Executors.newFixedThreadPool(users);
+			List<Future<LatencyRecorder>> results = new ArrayList<>();
+			for (int i = 0; i < users; i++) {
+				results.add(workers.submit(() -> new Shopper(client, itemIds, thinkTimeMillis, measureFrom, deadline).run()));
+			}
+			LatencyRecorder total = new LatencyRecorder();
+			for (Future<LatencyRecorder> result : results) {
+				total.add(result.get());
+			}
+			workers.shutdown();
+
+			report(total, durationSeconds, System.out);
+			writeDistributions(total, reportDir);
+		} finally {
+			context.close();
+		}
+	}
+
+	private static List<Long> seedCatalog(ConfigurableApplicationContext context, int count) {
+		ItemRepository itemRepository = context.getBean(ItemRepository.class);
+		List<Item> items = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			Item item = new Item();
+			item.setName("Load Widget " + i);
+			item.setDescription("A widget seeded by the load test, number " + i);
+			item.setPrice(BigDecimal.valueOf(100 + i % 900, 2));
+			items.add(item);
+		}
+		itemRepository.saveAll(items);
+		context.getBean(ItemCatalog.class).invalidate();
+
+		List<Long> ids = new ArrayList<>();
+		itemRepository.findAll().forEach(item -> ids.add(item.getId()));
+		return Collections.unmodifiableList(ids);
+	}
+
+	private static void report(LatencyRecorder total, long durationSeconds, PrintStream out) {
+		out.printf("%n%-15s %9s %7s %9s %9s %9s %9s %9s%n", "endpoint", "count", "errors", "req/s", "p50 ms",
+				"p99 ms", "p999 ms", "max ms");
+		Histogram all = null;
+		long errors = 0;
+		for (Map.Entry<String, Histogram> entry : total.latencies().entrySet()) {
+			Histogram histogram = entry.getValue();
+			printRow(out, entry.getKey(), histogram, total.errors(entry.getKey()), durationSeconds);
+			errors += total.errors(entry.getKey());
+			if (all == null) {
+				all = histogram.copy();
+			} else {
+				all.add(histogram);
+			}
+		}
+		if (all != null) {
+			printRow(out, "total", all, errors, durationSeconds);
+		}
+	}
+
+	private static void printRow(PrintStream out, String endpoint, Histogram histogram, long errors,
+			long durationSeconds) {
+		out.printf("%-15s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f%n", endpoint, histogram.getTotalCount(), errors,
+				(double) histogram.getTotalCount() / durationSeconds,
+				histogram.getValueAtPercentile(50) / 1000.0,
+				histogram.getValueAtPercentile(99) / 1000.0,
+				histogram.getValueAtPercentile(99.9) / 1000.0,
+				histogram.getMaxValue() / 1000.0);
+	}
+
+	private static void writeDistributions(LatencyRecorder total, File reportDir) throws IOException {
+		if (!reportDir.isDirectory() && !reportDir.mkdirs()) {
+			throw new IOException("Could not create " + reportDir);
+		}
+		for (Map.Entry<String, Histogram> entry : total.latencies().entrySet()) {
+			try (PrintStream out = new PrintStream(new File(reportDir, entry.getKey() + ".hgrm"), "UTF-8")) {
+				entry.getValue().outputPercentileDistribution(out, 1000.0);
+			}
+		}
+		System.out.printf("%nPercentile distributions (ms) written to %s%n", reportDir.getAbsolutePath());
+	}
+
+	/**
+	 * One worker: signs up, logs in and then picks operations from {@link #MIX} until
+	 * the deadline. A {@code user.signup} pick replaces the current shopper with a new
+	 * one.
+	 */
+	private static final class Shopper {
+
+		private final ApiClient client;
+
+		private final List<Long> itemIds;
+
+		private final long thinkTimeMillis;
+
+		private final long measureFrom;
+
+		private final long deadline;
+
+		private final LatencyRecorder recorder = new LatencyRecorder();
+
+		private final int totalWeight;
+
+		private String username;
+
+		private String token;
+
+		private long cursor;
+
+		Shopper(ApiClient client, List<Long> itemIds, long thinkTimeMillis, long measureFrom, long deadline) {
+			this.client = client;
+			this.itemIds = itemIds;
+			this.thinkTimeMillis = thinkTimeMillis;
+			this.measureFrom = measureFrom;
+			this.deadline = deadline;
+			int weight = 0;
+			for (Object[] entry : MIX) {
+				weight += (Integer) entry[1];
+			}
+			this.totalWeight = weight;
+		}
+
+		LatencyRecorder run() {
+			signUp();
+			while (System.nanoTime() < deadline) {
+				execute(pick());
+				think();
+			}
+			return recorder;
+		}
+
+		private void think() {
+			if (thinkTimeMillis > 0) {
+				pause(thinkTimeMillis);
+			}
+		}
+
+		private void pause(long millis) {
+			try {
+				Thread.sleep(millis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		private String pick() {
+			int roll = ThreadLocalRandom.current().nextInt(totalWeight);
+			for (Object[] entry : MIX) {
+				roll -= (Integer) entry[1];
+				if (roll < 0) {
+					return (String) entry[0];
+				}
+			}
+			throw new IllegalStateException("Traffic mix weights are inconsistent");
+		}
+
+		/**
+		 * Signup and login shed load with 503 while the hashing pool is saturated; like a
+		 * real client, the shopper waits for the {@code Retry-After} delay and tries again.
+		 */
+		private void signUp() {
+			username = "load-" + RUN_ID + "-" + USER_SEQUENCE.incrementAndGet();
+			String body = "{\"username\":\"" + username + "\",\"password\":\"" + PASSWORD
+					+ "\",\"confirmPassword\":\"" + PASSWORD + "\"}";
+			callUntilAccepted("user.create", () -> client.post("/api/user/create", null, body));
+			logIn();
+		}
+
+		private void logIn() {
+			String body = "{\"username\":\"" + username + "\",\"password\":\"" + PASSWORD + "\"}";
+			ApiClient.Response response = callUntilAccepted("user.login", () -> client.post("/login", null, body));
+			if (response != null && response.authorization != null) {
+				token = response.authorization;
+			}
+		}
+
+		/**
+		 * @return the cursor to continue with, 0 to start over after the last page or an
+		 * error
+		 */
+		private static long nextCursor(ApiClient.Response page) {
+			if (page == null) {
+				return 0;
+			}
+			Matcher matcher = NEXT_CURSOR.matcher(page.body);
+			return matcher.find() ? Long.parseLong(matcher.group(1)) : 0;
+		}
+
+		private ApiClient.Response callUntilAccepted(String endpoint, Request request) {
+			ApiClient.Response response = call(endpoint, request);
+			while (response != null && response.isOverloaded() && System.nanoTime() < deadline) {
+				pause(TimeUnit.SECONDS.toMillis(Math.max(1, response.retryAfterSeconds)));
+				response = call(endpoint, request);
+			}
+			return response;
+		}
+
+		private void execute(String operation) {
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			long itemId = itemIds.get(random.nextInt(itemIds.size()));
+			switch (operation) {
+			case "item.list":
+				call(operation, () -> client.get("/api/item", token));
+				break;
+			case "item.page":
+				ApiClient.Response page = call(operation,
+						() -> client.get("/api/item/page?size=20&cursor=" + cursor, token));
+				cursor = nextCursor(page);
+				break;
+			case "item.get":
+				call(operation, () -> client.get("/api/item/" + itemId, token));
+				break;
+			case "item.search":
+				call(operation, () -> client.get("/api/item/search?q=widget+" + random.nextInt(100), token));
+				break;
+			case "cart.add":
+				call(operation, () -> client.post("/api/cart/addToCart", token, cartRequest(itemId, 1 + random.nextInt(3))));
+				break;
+			case "cart.remove":
+				call(operation, () -> client.post("/api/cart/removeFromCart", token, cartRequest(itemId, 1)));
+				break;
+			case "order.submit":
+				Map<String, String> headers = Collections.singletonMap("Idempotency-Key", UUID.randomUUID().toString());
+				call(operation, () -> client.post("/api/order/submit/" + username, token, "", headers));
+				break;
+			case "order.history":
+				call(operation, () -> client.get("/api/order/history/" + username + "?size=20", token));
+				break;
+			case "user.login":
+				logIn();
+				break;
+			case "user.signup":
+				signUp();
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown operation " + operation);
+			}
+		}
+
+		private String cartRequest(long itemId, int quantity) {
+			return "{\"username\":\"" + username + "\",\"itemId\":" + itemId + ",\"quantity\":" + quantity + "}";
+		}
+
+		private ApiClient.Response call(String endpoint, Request request) {
+			long start = System.nanoTime();
+			ApiClient.Response response;
+			try {
+				response = request.send();
+			} catch (IOException e) {
+				response = null;
+			}
+			if (start >= measureFrom && start < deadline) {
+				recorder.record(endpoint, System.nanoTime() - start, response != null && response.isSuccess());
+			}
+			return response;
+		}
+	}
+
+	@FunctionalInterface
+	private interface Request {
+		ApiClient.Response send() throws IOException;
+	}
+}
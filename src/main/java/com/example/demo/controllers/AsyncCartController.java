@@ -0,0 +1,47 @@
+package com.example.demo.controllers;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.demo.model.requests.ModifyCartBatchRequest;
+import com.example.demo.model.requests.ModifyCartRequest;
+import com.example.demo.model.responses.CartView;
+import com.example.demo.server.AsyncApiExecutor;
+
+/**
+ * Non-blocking variant of {@link CartController}. The same validation and retries run
+ * on the {@link AsyncApiExecutor} instead of a Tomcat thread.
+ */
+@RestController
+@RequestMapping("/api/async/cart")
+@ConditionalOnProperty(name = "api.async.enabled", havingValue = "true")
+public class AsyncCartController {
+
+	@Autowired
+	private CartController cartController;
+
+	@Autowired
+	private AsyncApiExecutor executor;
+
+	@PostMapping("/addToCart")
+	public CompletableFuture<ResponseEntity<CartView>> addTocart(@RequestBody ModifyCartRequest request) {
+		return executor.respond(() -> cartController.addTocart(request));
+	}
+
+	@PostMapping("/removeFromCart")
+	public CompletableFuture<ResponseEntity<CartView>> removeFromcart(@RequestBody ModifyCartRequest request) {
+		return executor.respond(() -> cartController.removeFromcart(request));
+	}
+
+	@PostMapping("/batch")
+	public CompletableFuture<ResponseEntity<CartView>> modifyCart(@RequestBody ModifyCartBatchRequest request) {
+		return executor.respond(() -> cartController.modifyCart(request));
+	}
+}
@@ -0,0 +1,94 @@
+package com.example.demo.controllers;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.demo.metrics.QueryCounter;
+import com.example.demo.model.responses.ItemPage;
+import com.example.demo.model.responses.ItemView;
+import com.example.demo.server.AsyncApiExecutor;
+import com.example.demo.services.ItemCatalog;
+import com.example.demo.services.NonBlockingItemWriter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Non-blocking variant of the read endpoints of {@link ItemController}. Each request
+ * runs on the {@link AsyncApiExecutor} and releases its Tomcat thread immediately;
+ * {@code /stream} writes the catalog with servlet non-blocking I/O, paced by the client.
+ */
+@RestController
+@RequestMapping("/api/async/item")
+@ConditionalOnProperty(name = "api.async.enabled", havingValue = "true")
+public class AsyncItemController {
+
+	@Autowired
+	private ItemController itemController;
+
+	@Autowired
+	private ItemCatalog itemCatalog;
+
+	@Autowired
+	private AsyncApiExecutor executor;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Value("${api.async.stream.page-size:500}")
+	private int streamPageSize;
+
+	@Value("${api.async.stream.timeout-seconds:300}")
+	private long streamTimeoutSeconds;
+
+	@GetMapping
+	public CompletableFuture<ResponseEntity<List<ItemView>>> getItems() {
+		return executor.respond(itemController::getItems);
+	}
+
+	@GetMapping("/page")
+	public CompletableFuture<ResponseEntity<ItemPage>> getItemPage(@RequestParam(defaultValue = "0") long cursor,
+			@RequestParam(defaultValue = "20") int size) {
+		return executor.respond(() -> itemController.getItemPage(cursor, size));
+	}
+
+	@GetMapping("/search")
+	public CompletableFuture<ResponseEntity<List<ItemView>>> searchItems(@RequestParam String q,
+			@RequestParam(defaultValue = "20") int limit) {
+		return executor.respond(() -> itemController.searchItems(q, limit));
+	}
+
+	@GetMapping("/stream")
+	public void streamItems(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+		AsyncContext context = request.startAsync(request, response);
+		context.setTimeout(TimeUnit.SECONDS.toMillis(streamTimeoutSeconds));
+		new NonBlockingItemWriter(itemCatalog, objectMapper, QueryCounter.forCurrentRequest(executor), streamPageSize)
+				.start(context);
+	}
+
+	@GetMapping("/{id}")
+	public CompletableFuture<ResponseEntity<ItemView>> getItemById(@PathVariable Long id) {
+		return executor.respond(() -> itemController.getItemById(id));
+	}
+
+	@GetMapping("/name/{name}")
+	public CompletableFuture<ResponseEntity<List<ItemView>>> getItemsByName(@PathVariable String name) {
+		return executor.respond(() -> itemController.getItemsByName(name));
+	}
+}
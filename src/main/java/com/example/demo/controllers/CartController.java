@@ -1,11 +1,18 @@
 package com.example.demo.controllers;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.IntStream;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -13,13 +20,16 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import com.example.demo.model.persistence.Cart;
 import com.example.demo.model.persistence.Item;
-import com.example.demo.model.persistence.User;
-import com.example.demo.model.persistence.repositories.CartRepository;
 import com.example.demo.model.persistence.repositories.ItemRepository;
-import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.requests.CartOperation;
+import com.example.demo.model.requests.ModifyCartBatchRequest;
 import com.example.demo.model.requests.ModifyCartRequest;
+import com.example.demo.model.responses.CartView;
+import com.example.demo.services.CartCapacityExceededException;
+import com.example.demo.services.CartStorage;
+import com.example.demo.services.UserCache;
+import com.example.demo.services.UserSummary;
 
 @RestController
 @RequestMapping("/api/cart")
@@ -28,18 +38,21 @@ public class CartController {
 	private static final Logger log = LoggerFactory.getLogger(CartController.class);
 
 	@Autowired
-	private UserRepository userRepository;
+	private UserCache userCache;
 	
 	@Autowired
-	private CartRepository cartRepository;
+	private CartStorage cartStorage;
 	
 	@Autowired
 	private ItemRepository itemRepository;
+
+	@Value("${cart.batch.max-operations:100}")
+	private int maxBatchOperations;
 	
 	@PostMapping("/addToCart")
-	public ResponseEntity<Cart> addTocart(@RequestBody ModifyCartRequest request) {
-		User user = userRepository.findByUsername(request.getUsername());
-		if(user == null) {
+	public ResponseEntity<CartView> addTocart(@RequestBody ModifyCartRequest request) {
+		Optional<UserSummary> user = userCache.findByUsername(request.getUsername());
+		if(!user.isPresent()) {
 			log.error("Could not add to cart because user not found: {}", request.getUsername());
 
 			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
@@ -51,19 +64,30 @@ public class CartController {
 
 			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
 		}
-		Cart cart = user.getCart();
-		IntStream.range(0, request.getQuantity())
-			.forEach(i -> cart.addItem(item.get()));
-		cartRepository.save(cart);
+		Optional<CartView> cart;
+		try {
+			cart = cartStorage.addItem(user.get(), item.get(), request.getQuantity());
+		} catch (ConcurrencyFailureException e) {
+			log.error("Could not add to cart because of concurrent updates: {}", request.getUsername());
+			return ResponseEntity.status(HttpStatus.CONFLICT).build();
+		} catch (CartCapacityExceededException e) {
+			log.error("Could not add to cart because the cart is full: {}", request.getUsername());
+			return ResponseEntity.badRequest().build();
+		}
+		if(!cart.isPresent()) {
+			log.error("Could not add to cart because cart not found: {}", request.getUsername());
+
+			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+		}
 
 		log.info("Added item {} to cart of {}", request.getItemId(), request.getUsername());
-		return ResponseEntity.ok(cart);
+		return ResponseEntity.ok(cart.get());
 	}
 	
 	@PostMapping("/removeFromCart")
-	public ResponseEntity<Cart> removeFromcart(@RequestBody ModifyCartRequest request) {
-		User user = userRepository.findByUsername(request.getUsername());
-		if(user == null) {
+	public ResponseEntity<CartView> removeFromcart(@RequestBody ModifyCartRequest request) {
+		Optional<UserSummary> user = userCache.findByUsername(request.getUsername());
+		if(!user.isPresent()) {
 			log.error("Could not remove from cart because user not found: {}", request.getUsername());
 
 			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
@@ -73,14 +97,75 @@ public class CartController {
 			log.error("Could not remove from cart because item not found: {}", request.getItemId());
 			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
 		}
-		Cart cart = user.getCart();
-		IntStream.range(0, request.getQuantity())
-			.forEach(i -> cart.removeItem(item.get()));
-		cartRepository.save(cart);
+		Optional<CartView> cart;
+		try {
+			cart = cartStorage.removeItem(user.get(), item.get(), request.getQuantity());
+		} catch (ConcurrencyFailureException e) {
+			log.error("Could not remove from cart because of concurrent updates: {}", request.getUsername());
+			return ResponseEntity.status(HttpStatus.CONFLICT).build();
+		}
+		if(!cart.isPresent()) {
+			log.error("Could not remove from cart because cart not found: {}", request.getUsername());
+			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+		}
 
 		log.info("Removed item {} to cart of {}", request.getItemId(), request.getUsername());
 
-		return ResponseEntity.ok(cart);
+		return ResponseEntity.ok(cart.get());
+	}
+
+	/**
+	 * Applies a list of adds and removes in order and saves the cart once. All items are
+	 * resolved with a single query; if any of them does not exist nothing is applied.
+	 */
+	@PostMapping("/batch")
+	public ResponseEntity<CartView> modifyCart(@RequestBody ModifyCartBatchRequest request) {
+		List<CartOperation> operations = request.getOperations();
+		if(operations == null || operations.isEmpty() || operations.size() > maxBatchOperations) {
+			log.error("Could not modify cart because the batch has {} operations", operations == null ? 0 : operations.size());
+			return ResponseEntity.badRequest().build();
+		}
+		Optional<UserSummary> user = userCache.findByUsername(request.getUsername());
+		if(!user.isPresent()) {
+			log.error("Could not modify cart because user not found: {}", request.getUsername());
+			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+		}
+		Set<Long> itemIds = new HashSet<>();
+		operations.forEach(operation -> itemIds.add(operation.getItemId()));
+		Map<Long, Item> items = itemRepository.findAllById(itemIds).stream()
+				.collect(Collectors.toMap(Item::getId, Function.identity()));
+		if(items.size() != itemIds.size()) {
+			itemIds.removeAll(items.keySet());
+			log.error("Could not modify cart because items not found: {}", itemIds);
+			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+		}
+
+		Optional<CartView> cart;
+		try {
+			cart = cartStorage.applyAll(user.get(), c -> {
+				for(CartOperation operation : operations) {
+					Item item = items.get(operation.getItemId());
+					if(operation.getAction() == CartOperation.Action.REMOVE) {
+						c.removeItem(item, operation.getQuantity());
+					} else {
+						c.addItem(item, operation.getQuantity());
+					}
+				}
+			});
+		} catch (ConcurrencyFailureException e) {
+			log.error("Could not modify cart because of concurrent updates: {}", request.getUsername());
+			return ResponseEntity.status(HttpStatus.CONFLICT).build();
+		} catch (CartCapacityExceededException e) {
+			log.error("Could not modify cart because the cart is full: {}", request.getUsername());
+			return ResponseEntity.badRequest().build();
+		}
+		if(!cart.isPresent()) {
+			log.error("Could not modify cart because cart not found: {}", request.getUsername());
+			return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+		}
+
+		log.info("Applied {} cart operations for {}", operations.size(), request.getUsername());
+		return ResponseEntity.ok(cart.get());
 	}
 
 }
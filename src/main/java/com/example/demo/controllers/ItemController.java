@@ -1,18 +1,32 @@
 package com.example.demo.controllers;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 
+import javax.servlet.http.HttpServletResponse;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.example.demo.model.persistence.Item;
-import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.responses.ImportReport;
+import com.example.demo.model.responses.ItemPage;
+import com.example.demo.model.responses.ItemView;
+import com.example.demo.services.ItemCatalog;
+import com.example.demo.services.ItemImporter;
+import com.example.demo.services.ItemStreamer;
 
 @RestController
 @RequestMapping("/api/item")
@@ -20,23 +34,87 @@ public class ItemController {
 	private static final Logger log = LoggerFactory.getLogger(ItemController.class);
 
 	@Autowired
-	private ItemRepository itemRepository;
+	private ItemCatalog itemCatalog;
+
+	@Autowired
+	private ItemStreamer itemStreamer;
+
+	@Autowired
+	private ItemImporter itemImporter;
+
+	@Value("${catalog.page.max-size:100}")
+	private int maxPageSize;
 	
 	@GetMapping
-	public ResponseEntity<List<Item>> getItems() {
+	public ResponseEntity<List<ItemView>> getItems() {
 		log.info("All items returned");
-		return ResponseEntity.ok(itemRepository.findAll());
+		return ResponseEntity.ok(views(itemCatalog.findAll()));
+	}
+
+	@GetMapping("/page")
+	public ResponseEntity<ItemPage> getItemPage(@RequestParam(defaultValue = "0") long cursor,
+			@RequestParam(defaultValue = "20") int size) {
+		if (size < 1) {
+			log.error("Invalid item page size {}", size);
+			return ResponseEntity.badRequest().build();
+		}
+
+		log.info("Item page loaded after cursor {}", cursor);
+		return ResponseEntity.ok(itemCatalog.findPage(cursor, Math.min(size, maxPageSize)));
+	}
+
+	@GetMapping("/search")
+	public ResponseEntity<List<ItemView>> searchItems(@RequestParam String q,
+			@RequestParam(defaultValue = "20") int limit) {
+		if (limit < 1) {
+			log.error("Invalid item search limit {}", limit);
+			return ResponseEntity.badRequest().build();
+		}
+
+		log.info("Items searched with {}", q);
+		return ResponseEntity.ok(views(itemCatalog.search(q, Math.min(limit, maxPageSize))));
+	}
+
+	@GetMapping("/stream")
+	public void streamItems(HttpServletResponse response) throws IOException {
+		response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+		long count = itemStreamer.writeAll(response.getOutputStream());
+
+		log.info("Streamed {} items", count);
 	}
 	
+	/**
+	 * Upserts items by name from a CSV ({@code text/csv}) or newline-delimited JSON
+	 * ({@code application/x-ndjson}) request body, streamed rather than buffered. Only
+	 * the users listed in {@code security.admin-users} may call it.
+	 */
+	@PostMapping(value = "/import", consumes = "text/csv")
+	public ResponseEntity<ImportReport> importCsv(InputStream body) throws IOException {
+		ImportReport report = itemImporter.importItems(body, ItemImporter.Format.CSV);
+
+		log.info("Imported items from CSV: {} inserted, {} updated, {} rejected", report.getInserted(),
+				report.getUpdated(), report.getRejected());
+		return ResponseEntity.ok(report);
+	}
+
+	@PostMapping(value = "/import", consumes = "application/x-ndjson")
+	public ResponseEntity<ImportReport> importNdjson(InputStream body) throws IOException {
+		ImportReport report = itemImporter.importItems(body, ItemImporter.Format.NDJSON);
+
+		log.info("Imported items from NDJSON: {} inserted, {} updated, {} rejected", report.getInserted(),
+				report.getUpdated(), report.getRejected());
+		return ResponseEntity.ok(report);
+	}
+
 	@GetMapping("/{id}")
-	public ResponseEntity<Item> getItemById(@PathVariable Long id) {
+	public ResponseEntity<ItemView> getItemById(@PathVariable Long id) {
 		log.info("Item loaded by ID {}", id);
-		return ResponseEntity.of(itemRepository.findById(id));
+		return ResponseEntity.of(itemCatalog.findById(id).map(ItemView::from));
 	}
 	
 	@GetMapping("/name/{name}")
-	public ResponseEntity<List<Item>> getItemsByName(@PathVariable String name) {
-		List<Item> items = itemRepository.findByName(name);
+	public ResponseEntity<List<ItemView>> getItemsByName(@PathVariable String name) {
+		List<Item> items = itemCatalog.findByName(name);
 
 		if (items == null || items.isEmpty()) {
 			log.error("Could not find any items by name {}", name);
@@ -44,7 +122,13 @@ public class ItemController {
 		}
 
 		log.info("Found items by name {}", name);
-		return ResponseEntity.ok(items);
+		return ResponseEntity.ok(views(items));
+	}
+
+	private static List<ItemView> views(List<Item> items) {
+		List<ItemView> views = new ArrayList<>(items.size());
+		items.forEach(item -> views.add(ItemView.from(item)));
+		return views;
 	}
 	
 }
@@ -1,21 +1,28 @@
 package com.example.demo.controllers;
 
-import java.util.List;
+import java.util.Optional;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-import com.example.demo.model.persistence.User;
-import com.example.demo.model.persistence.UserOrder;
-import com.example.demo.model.persistence.repositories.OrderRepository;
-import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.responses.OrderHistoryPage;
+import com.example.demo.model.responses.OrderView;
+import com.example.demo.services.OrderService;
+import com.example.demo.services.UserCache;
+import com.example.demo.services.UserSummary;
 
 @RestController
 @RequestMapping("/api/order")
@@ -23,38 +30,77 @@ public class OrderController {
 	private static final Logger log = LoggerFactory.getLogger(OrderController.class);
 	
 	@Autowired
-	private UserRepository userRepository;
-	
+	private UserCache userCache;
+
 	@Autowired
-	private OrderRepository orderRepository;
+	private OrderService orderService;
 	
+	@Value("${orders.history.max-page-size:50}")
+	private int maxPageSize;
 	
 	@PostMapping("/submit/{username}")
-	public ResponseEntity<UserOrder> submit(@PathVariable String username) {
-		User user = userRepository.findByUsername(username);
-		if(user == null) {
+	public ResponseEntity<OrderView> submit(@PathVariable String username,
+			@RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+		Optional<UserSummary> user = userCache.findByUsername(username);
+		if(!user.isPresent()) {
 			log.error("Could not submit order because user was not found: {}", username);
 			return ResponseEntity.notFound().build();
 		}
-		UserOrder order = UserOrder.createFromCart(user.getCart());
-		orderRepository.save(order);
+		Optional<OrderView> order;
+		try {
+			order = orderService.submit(user.get(), idempotencyKey);
+		} catch (ConcurrencyFailureException e) {
+			log.error("Could not submit order because the cart changed concurrently: {}", username);
+			return ResponseEntity.status(HttpStatus.CONFLICT).build();
+		} catch (DataIntegrityViolationException e) {
+			// a concurrent retry with the same idempotency key won the race
+			order = orderService.findByIdempotencyKey(user.get(), idempotencyKey);
+			if (!order.isPresent()) {
+				throw e;
+			}
+		}
+		if(!order.isPresent()) {
+			log.error("Could not submit order because cart was not found: {}", username);
+			return ResponseEntity.notFound().build();
+		}
 
 		log.info("Order submitted for user {}", username);
 
-		return ResponseEntity.ok(order);
+		return ResponseEntity.ok(order.get());
 	}
 	
 	@GetMapping("/history/{username}")
-	public ResponseEntity<List<UserOrder>> getOrdersForUser(@PathVariable String username) {
-		User user = userRepository.findByUsername(username);
+	public ResponseEntity<OrderHistoryPage> getOrdersForUser(@PathVariable String username,
+			@RequestParam(required = false) Long cursor,
+			@RequestParam(defaultValue = "20") int size) {
+		Optional<UserSummary> user = userCache.findByUsername(username);
 
-		if(user == null) {
+		if(!user.isPresent()) {
 			log.error("Could not load history because user was not found: {}", username);
 			return ResponseEntity.notFound().build();
 		}
+		if(size < 1) {
+			log.error("Invalid order history page size {}", size);
+			return ResponseEntity.badRequest().build();
+		}
 
 		log.info("Order history loaded for user {}", username);
 
-		return ResponseEntity.ok(orderRepository.findByUser(user));
+		return ResponseEntity.ok(orderService.findHistory(user.get(),
+				cursor == null ? Long.MAX_VALUE : cursor, Math.min(size, maxPageSize)));
+	}
+
+	@GetMapping("/history/{username}/{id}")
+	public ResponseEntity<OrderView> getOrder(@PathVariable String username, @PathVariable long id) {
+		Optional<UserSummary> user = userCache.findByUsername(username);
+
+		if(!user.isPresent()) {
+			log.error("Could not load order because user was not found: {}", username);
+			return ResponseEntity.notFound().build();
+		}
+
+		log.info("Order {} loaded for user {}", id, username);
+
+		return ResponseEntity.of(orderService.findOrder(user.get(), id));
 	}
 }
@@ -1,10 +1,17 @@
 package com.example.demo.controllers;
 
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -12,11 +19,14 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import com.example.demo.model.persistence.Cart;
 import com.example.demo.model.persistence.User;
-import com.example.demo.model.persistence.repositories.CartRepository;
 import com.example.demo.model.persistence.repositories.UserRepository;
 import com.example.demo.model.requests.CreateUserRequest;
+import com.example.demo.model.responses.UserView;
+import com.example.demo.security.PasswordHashingExecutor;
+import com.example.demo.services.UserCache;
+import com.example.demo.services.UserService;
+import com.example.demo.services.UserSummary;
 
 @RestController
 @RequestMapping("/api/user")
@@ -28,58 +38,84 @@ public class UserController {
 	private UserRepository userRepository;
 	
 	@Autowired
-	private CartRepository cartRepository;
+	private UserCache userCache;
+
+	@Autowired
+	private UserService userService;
 
 	@Autowired
-	private BCryptPasswordEncoder bCryptPasswordEncoder;
+	private PasswordHashingExecutor passwordHashingExecutor;
 
 	@GetMapping("/id/{id}")
-	public ResponseEntity<User> findById(@PathVariable Long id) {
+	public ResponseEntity<UserView> findById(@PathVariable Long id) {
 		log.info("User name loaded by ID {}", id);
 
-		return ResponseEntity.of(userRepository.findById(id));
+		return ResponseEntity.of(userRepository.findById(id).map(UserView::from));
 	}
 	
 	@GetMapping("/{username}")
-	public ResponseEntity<User> findByUserName(@PathVariable String username) {
-		User user = userRepository.findByUsername(username);
+	public ResponseEntity<UserView> findByUserName(@PathVariable String username) {
+		Optional<UserSummary> summary = userCache.findByUsername(username);
 
-		if (user == null) {
+		if (!summary.isPresent()) {
 			log.error("No user found with name {}", username);
 			return ResponseEntity.notFound().build();
 		}
 
 		log.info("User name found with {}", username);
 
-		return ResponseEntity.ok(user);
+		return ResponseEntity.ok(UserView.from(summary.get()));
 	}
 	
+	/**
+	 * Answers asynchronously: the container thread is released while the password is
+	 * hashed on the bounded hashing pool. Taken names are rejected with 409 before any
+	 * hashing, a saturated pool with 503.
+	 */
 	@PostMapping("/create")
-	public ResponseEntity<User> createUser(@RequestBody CreateUserRequest createUserRequest) {
-		log.info("User name set with {}", createUserRequest.getUsername());
+	public CompletableFuture<ResponseEntity<UserView>> createUser(@RequestBody CreateUserRequest createUserRequest) {
+		String username = createUserRequest.getUsername();
+		log.info("User name set with {}", username);
 
 		if (null == createUserRequest.getPassword() ||
 			createUserRequest.getPassword().length() < 7 ||
 			!createUserRequest.getPassword().equals(createUserRequest.getConfirmPassword())) {
-			log.error("Error with user password. Cannot create user {}", createUserRequest.getUsername());
+			log.error("Error with user password. Cannot create user {}", username);
 
-			return ResponseEntity.badRequest().build();
+			return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
 		}
+		if (username == null || username.trim().isEmpty()) {
+			log.error("Missing user name. Cannot create user");
 
-		User user = new User();
-		user.setUsername(createUserRequest.getUsername());
-		Cart cart = new Cart();
-
-		cartRepository.save(cart);
-
-		user.setCart(cart);
-		user.setPassword(bCryptPasswordEncoder.encode(createUserRequest.getPassword()));
+			return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
+		}
+		if (userService.isTaken(username)) {
+			log.error("User name already taken. Cannot create user {}", username);
 
-		userRepository.save(user);
+			return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.CONFLICT).build());
+		}
 
-		log.info("User created set with username {}", createUserRequest.getUsername());
+		CompletableFuture<User> user;
+		try {
+			user = userService.create(username, createUserRequest.getPassword());
+		} catch (RejectedExecutionException e) {
+			log.error("Password hashing is saturated. Cannot create user {}", username);
 
-		return ResponseEntity.ok(user);
+			return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+					.header(HttpHeaders.RETRY_AFTER, String.valueOf(passwordHashingExecutor.getRetryAfterSeconds()))
+					.build());
+		}
+		return user.handle((created, failure) -> {
+			if (failure == null) {
+				log.info("User created set with username {}", username);
+				return ResponseEntity.ok(UserView.from(created));
+			}
+			if (failure.getCause() instanceof DataIntegrityViolationException) {
+				log.error("User name taken concurrently. Cannot create user {}", username);
+				return ResponseEntity.status(HttpStatus.CONFLICT).<UserView>build();
+			}
+			throw failure instanceof CompletionException ? (CompletionException) failure : new CompletionException(failure);
+		});
 	}
 	
 }
@@ -0,0 +1,121 @@
+package com.example.demo.journal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.OrderItem;
+import com.example.demo.model.persistence.UserOrder;
+
+/**
+ * An order as it is written to the {@link OrderJournal}: ids, user, creation time,
+ * total and idempotency key followed by one (line id, item id, quantity, unit price)
+ * entry per line. Amounts are stored in cents.
+ */
+public class JournaledOrder {
+
+	private static final int FORMAT_VERSION = 1;
+
+	private final long userId;
+
+	private final UserOrder order;
+
+	public JournaledOrder(long userId, UserOrder order) {
+		this.userId = userId;
+		this.order = order;
+	}
+
+	public long getUserId() {
+		return userId;
+	}
+
+	/**
+	 * The order with ids assigned. Its user is not set.
+	 */
+	public UserOrder getOrder() {
+		return order;
+	}
+
+	public long getItemCount() {
+		long count = 0;
+		for (OrderItem line : order.getItems()) {
+			count += line.getQuantity();
+		}
+		return count;
+	}
+
+	public byte[] encode() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + order.getItems().size() * 28);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeByte(FORMAT_VERSION);
+			out.writeLong(order.getId());
+			out.writeLong(userId);
+			out.writeLong(order.getCreatedAt().getEpochSecond());
+			out.writeInt(order.getCreatedAt().getNano());
+			out.writeLong(cents(order.getTotal()));
+			out.writeBoolean(order.getIdempotencyKey() != null);
+			if (order.getIdempotencyKey() != null) {
+				out.writeUTF(order.getIdempotencyKey());
+			}
+			out.writeInt(order.getItems().size());
+			for (OrderItem line : order.getItems()) {
+				out.writeLong(line.getId());
+				out.writeLong(line.getItem().getId());
+				out.writeInt(line.getQuantity());
+				out.writeLong(cents(line.getUnitPrice()));
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @param itemsById resolves the item of each line; only its id and name are used when
+	 * the order is shown before it is projected
+	 */
+	public static JournaledOrder decode(byte[] payload, Function<Long, Item> itemsById) {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+			int version = in.readUnsignedByte();
+			if (version != FORMAT_VERSION) {
+				throw new IllegalStateException("Unknown order journal record version " + version);
+			}
+			UserOrder order = new UserOrder();
+			order.setId(in.readLong());
+			long userId = in.readLong();
+			order.setCreatedAt(Instant.ofEpochSecond(in.readLong(), in.readInt()));
+			order.setTotal(BigDecimal.valueOf(in.readLong(), 2));
+			if (in.readBoolean()) {
+				order.setIdempotencyKey(in.readUTF());
+			}
+			int lineCount = in.readInt();
+			List<OrderItem> lines = new ArrayList<>(lineCount);
+			for (int i = 0; i < lineCount; i++) {
+				OrderItem line = new OrderItem();
+				line.setId(in.readLong());
+				line.setOrder(order);
+				line.setItem(itemsById.apply(in.readLong()));
+				line.setQuantity(in.readInt());
+				line.setUnitPrice(BigDecimal.valueOf(in.readLong(), 2));
+				lines.add(line);
+			}
+			order.setItems(lines);
+			return new JournaledOrder(userId, order);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static long cents(BigDecimal amount) {
+		return amount == null ? 0 : amount.movePointRight(2).longValueExact();
+	}
+}
@@ -0,0 +1,377 @@
+package com.example.demo.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only log of binary records in memory-mapped segment files of a fixed size.
+ * Each record is its payload length, a CRC32 of the payload and the payload itself; a
+ * length of {@code -1} marks the end of a segment whose remaining space was too small
+ * for the next record. Positions are logical: {@code segment index * segment size +
+ * offset}.
+ * <p>
+ * Appending only copies the record into the mapped segment. A single flusher thread
+ * then forces the segment to disk for everything appended so far and completes the
+ * futures of all records that became durable, so concurrent appends share one fsync
+ * (group commit). Readers only ever see durable records.
+ * <p>
+ * On opening, the existing segments are scanned and a torn or corrupt tail, left by a
+ * crash in the middle of a write, is cut off.
+ */
+public class OrderJournal implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(OrderJournal.class);
+
+	private static final int HEADER_BYTES = 8;
+
+	private static final int SEGMENT_END = -1;
+
+	private static final String SEGMENT_SUFFIX = ".journal";
+
+	private final Path directory;
+
+	private final int segmentBytes;
+
+	private final ConcurrentNavigableMap<Long, MappedByteBuffer> segments = new ConcurrentSkipListMap<>();
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition appended = lock.newCondition();
+
+	private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+
+	private final AtomicLong appends = new AtomicLong();
+
+	private final AtomicLong forces = new AtomicLong();
+
+	private final Thread flusher;
+
+	private long currentIndex;
+
+	private MappedByteBuffer current;
+
+	private long writePosition;
+
+	private volatile long durablePosition;
+
+	private boolean open = true;
+
+	public OrderJournal(Path directory, int segmentBytes) throws IOException {
+		this.directory = directory;
+		this.segmentBytes = segmentBytes;
+		Files.createDirectories(directory);
+		recover();
+		this.flusher = new Thread(this::flushLoop, "order-journal-flusher");
+		this.flusher.setDaemon(true);
+		this.flusher.start();
+	}
+
+	/**
+	 * Copies the record into the journal.
+	 *
+	 * @return completes with the position after the record once it is durable
+	 * @throws IllegalArgumentException if the record does not fit into a segment
+	 * @throws IllegalStateException if the journal is closed
+	 */
+	public CompletableFuture<Long> append(byte[] payload) throws IOException {
+		int size = HEADER_BYTES + payload.length;
+		if (size > segmentBytes) {
+			throw new IllegalArgumentException("Record of " + payload.length + " bytes does not fit into a segment");
+		}
+		CRC32 crc = new CRC32();
+		crc.update(payload, 0, payload.length);
+		CompletableFuture<Long> durable = new CompletableFuture<>();
+		lock.lock();
+		try {
+			if (!open) {
+				throw new IllegalStateException("Order journal is closed");
+			}
+			int offset = offset(writePosition);
+			if (offset + size > segmentBytes) {
+				if (offset + 4 <= segmentBytes) {
+					current.putInt(offset, SEGMENT_END);
+				}
+				// the flusher only forces the current segment, so the full one is forced here
+				current.force();
+				openSegment(currentIndex + 1);
+				writePosition = currentIndex * segmentBytes;
+				offset = 0;
+			}
+			ByteBuffer target = current.duplicate();
+			target.position(offset + HEADER_BYTES);
+			target.put(payload);
+			current.putInt(offset + 4, (int) crc.getValue());
+			current.putInt(offset, payload.length);
+			writePosition += size;
+			waiters.add(new Waiter(writePosition, durable));
+			appends.incrementAndGet();
+			appended.signal();
+		} finally {
+			lock.unlock();
+		}
+		return durable;
+	}
+
+	/**
+	 * Starts reading durable records at {@code position}, or at the oldest retained
+	 * record if that segment was already deleted.
+	 */
+	public Reader reader(long position) {
+		Map.Entry<Long, MappedByteBuffer> first = segments.firstEntry();
+		long oldest = first == null ? 0 : first.getKey() * segmentBytes;
+		return new Reader(Math.max(position, oldest));
+	}
+
+	/**
+	 * Deletes every segment that ends before {@code position}, typically once all of its
+	 * records are projected.
+	 */
+	public void deleteSegmentsBefore(long position) throws IOException {
+		long index = position / segmentBytes;
+		for (Long old : new ArrayList<>(segments.headMap(index).keySet())) {
+			segments.remove(old);
+			Files.deleteIfExists(segmentFile(old));
+		}
+	}
+
+	public long getDurablePosition() {
+		return durablePosition;
+	}
+
+	public long getAppends() {
+		return appends.get();
+	}
+
+	public long getForces() {
+		return forces.get();
+	}
+
+	/**
+	 * Stops accepting records and returns once everything appended is durable.
+	 */
+	@Override
+	public void close() {
+		lock.lock();
+		try {
+			open = false;
+			appended.signal();
+		} finally {
+			lock.unlock();
+		}
+		try {
+			flusher.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void flushLoop() {
+		for (;;) {
+			long target;
+			MappedByteBuffer segment;
+			lock.lock();
+			try {
+				while (open && writePosition == durablePosition) {
+					appended.awaitUninterruptibly();
+				}
+				if (writePosition == durablePosition) {
+					return;
+				}
+				target = writePosition;
+				segment = current;
+			} finally {
+				lock.unlock();
+			}
+
+			RuntimeException failure = null;
+			try {
+				segment.force();
+				forces.incrementAndGet();
+			} catch (RuntimeException e) {
+				log.error("Forcing the order journal to disk failed", e);
+				failure = e;
+			}
+
+			List<Waiter> done = new ArrayList<>();
+			lock.lock();
+			try {
+				if (failure == null) {
+					durablePosition = target;
+				}
+				while (!waiters.isEmpty() && waiters.peek().position <= target) {
+					done.add(waiters.poll());
+				}
+			} finally {
+				lock.unlock();
+			}
+			for (Waiter waiter : done) {
+				if (failure == null) {
+					waiter.durable.complete(waiter.position);
+				} else {
+					waiter.durable.completeExceptionally(failure);
+				}
+			}
+		}
+	}
+
+	private void recover() throws IOException {
+		List<Long> indexes = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				indexes.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+			}
+		}
+		indexes.sort(null);
+		if (indexes.isEmpty()) {
+			openSegment(0);
+			return;
+		}
+		for (Long index : indexes) {
+			openSegment(index);
+		}
+
+		long position = indexes.get(0) * segmentBytes;
+		for (;;) {
+			long index = position / segmentBytes;
+			MappedByteBuffer segment = segments.get(index);
+			int offset = offset(position);
+			if (segment == null) {
+				// the previous segment ended with an end marker but the next one is missing
+				openSegment(index);
+				break;
+			}
+			if (offset + HEADER_BYTES > segmentBytes || segment.getInt(offset) == SEGMENT_END) {
+				position = (index + 1) * segmentBytes;
+				continue;
+			}
+			int length = segment.getInt(offset);
+			if (length == 0) {
+				break;
+			}
+			if (length < 0 || offset + HEADER_BYTES + length > segmentBytes || !checksumMatches(segment, offset, length)) {
+				log.warn("Cutting off a corrupt order journal tail at position {}", position);
+				for (int i = offset; i < segmentBytes; i++) {
+					segment.put(i, (byte) 0);
+				}
+				segment.force();
+				break;
+			}
+			position += HEADER_BYTES + length;
+		}
+
+		long lastIndex = position / segmentBytes;
+		for (Long later : new ArrayList<>(segments.tailMap(lastIndex, false).keySet())) {
+			segments.remove(later);
+			Files.deleteIfExists(segmentFile(later));
+		}
+		currentIndex = lastIndex;
+		current = segments.get(lastIndex);
+		writePosition = position;
+		durablePosition = position;
+	}
+
+	private static boolean checksumMatches(ByteBuffer segment, int offset, int length) {
+		ByteBuffer payload = segment.duplicate();
+		payload.position(offset + HEADER_BYTES);
+		payload.limit(offset + HEADER_BYTES + length);
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		return (int) crc.getValue() == segment.getInt(offset + 4);
+	}
+
+	private void openSegment(long index) throws IOException {
+		try (FileChannel channel = FileChannel.open(segmentFile(index), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+			segments.put(index, segment);
+			currentIndex = index;
+			current = segment;
+		}
+	}
+
+	private Path segmentFile(long index) {
+		return directory.resolve(String.format("%020d%s", index, SEGMENT_SUFFIX));
+	}
+
+	private int offset(long position) {
+		return (int) (position % segmentBytes);
+	}
+
+	/**
+	 * Reads durable records in order. Not thread-safe; every consumer uses its own.
+	 */
+	public final class Reader {
+
+		private long position;
+
+		private Reader(long position) {
+			this.position = position;
+		}
+
+		/**
+		 * @return the next durable record, or {@code null} if there is none yet
+		 */
+		public byte[] next() {
+			for (;;) {
+				if (position >= durablePosition) {
+					return null;
+				}
+				long index = position / segmentBytes;
+				int offset = offset(position);
+				MappedByteBuffer segment = segments.get(index);
+				if (segment == null) {
+					throw new IllegalStateException("Order journal segment " + index + " is missing");
+				}
+				if (offset + HEADER_BYTES > segmentBytes || segment.getInt(offset) == SEGMENT_END) {
+					position = (index + 1) * segmentBytes;
+					continue;
+				}
+				int length = segment.getInt(offset);
+				byte[] payload = new byte[length];
+				ByteBuffer source = segment.duplicate();
+				source.position(offset + HEADER_BYTES);
+				source.get(payload);
+				position += HEADER_BYTES + length;
+				return payload;
+			}
+		}
+
+		public long getPosition() {
+			return position;
+		}
+	}
+
+	private static final class Waiter {
+
+		final long position;
+
+		final CompletableFuture<Long> durable;
+
+		Waiter(long position, CompletableFuture<Long> durable) {
+			this.position = position;
+			this.durable = durable;
+		}
+	}
+}
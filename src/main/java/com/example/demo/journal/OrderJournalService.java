@@ -0,0 +1,366 @@
+package com.example.demo.journal;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.OrderItem;
+import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.responses.OrderSummary;
+import com.example.demo.model.responses.OrderView;
+import com.example.demo.services.ItemCatalog;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Submits orders to an {@link OrderJournal} instead of the database, enabled with
+ * {@code orders.journal.enabled=true}. A submission is acknowledged as soon as its
+ * record is durable in the journal; a background projector then inserts the
+ * {@code user_order} and {@code order_item} rows in batches of
+ * {@code orders.journal.projection-batch-size} and records how far it got in a
+ * checkpoint file next to the segments. Segments that are fully projected are deleted.
+ * <p>
+ * Until an order is projected it is kept in memory and served from there, so it shows
+ * up in lookups, history and idempotency checks right away. Callers check here first
+ * and in the database second: an order is only dropped from memory after its rows are
+ * committed, so it is always found in one of the two places.
+ * <p>
+ * Order and line ids come from the same sequences Hibernate uses, so journaled and
+ * directly saved orders never collide. After a crash the records after the checkpoint
+ * are projected again; rows that already exist are skipped.
+ */
+@Service
+@ConditionalOnProperty(name = "orders.journal.enabled", havingValue = "true")
+public class OrderJournalService implements DisposableBean {
+
+	private static final Logger log = LoggerFactory.getLogger(OrderJournalService.class);
+
+	private static final int LOCK_STRIPES = 256;
+
+	private static final String INSERT_ORDER = "insert into user_order (id, user_id, total, created_at, idempotency_key) "
+			+ "values (?, ?, ?, ?, ?)";
+
+	private static final String INSERT_ORDER_ITEM = "insert into order_item (id, order_id, item_id, quantity, unit_price) "
+			+ "values (?, ?, ?, ?, ?)";
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	private final ItemCatalog itemCatalog;
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final OrderJournal journal;
+
+	private final Path checkpointFile;
+
+	private final int batchSize;
+
+	private final long pollMillis;
+
+	private final ConcurrentMap<Long, JournaledOrder> pendingById = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<String, JournaledOrder> pendingByKey = new ConcurrentHashMap<>();
+
+	private final ReentrantLock[] userLocks = new ReentrantLock[LOCK_STRIPES];
+
+	private final OrderJournal.Reader reader;
+
+	private final List<JournaledOrder> unprojected = new ArrayList<>();
+
+	private final Thread projector;
+
+	private final CountDownLatch stopping = new CountDownLatch(1);
+
+	private volatile long projected;
+
+	public OrderJournalService(ItemCatalog itemCatalog, JdbcTemplate jdbcTemplate,
+			PlatformTransactionManager transactionManager, MeterRegistry registry,
+			@Value("${orders.journal.directory:order-journal}") String directory,
+			@Value("${orders.journal.segment-bytes:67108864}") int segmentBytes,
+			@Value("${orders.journal.projection-batch-size:500}") int batchSize,
+			@Value("${orders.journal.projection-poll-millis:50}") long pollMillis) throws IOException {
+		this.itemCatalog = itemCatalog;
+		this.jdbcTemplate = jdbcTemplate;
+		this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.batchSize = batchSize;
+		this.pollMillis = pollMillis;
+		for (int i = 0; i < LOCK_STRIPES; i++) {
+			userLocks[i] = new ReentrantLock();
+		}
+
+		this.journal = new OrderJournal(Paths.get(directory), segmentBytes);
+		this.checkpointFile = Paths.get(directory, "checkpoint");
+		long checkpoint = readCheckpoint();
+		OrderJournal.Reader replay = journal.reader(checkpoint);
+		for (byte[] payload = replay.next(); payload != null; payload = replay.next()) {
+			addPending(decode(payload));
+		}
+		if (!pendingById.isEmpty()) {
+			log.info("{} journaled orders are not projected yet", pendingById.size());
+		}
+		this.reader = journal.reader(checkpoint);
+
+		Gauge.builder("orders.journal.pending", pendingById, ConcurrentMap::size)
+				.description("Journaled orders not yet written to the database")
+				.register(registry);
+		FunctionCounter.builder("orders.journal.appends", journal, OrderJournal::getAppends)
+				.description("Orders appended to the journal")
+				.register(registry);
+		FunctionCounter.builder("orders.journal.forces", journal, OrderJournal::getForces)
+				.description("Journal flushes to disk, each covering all orders appended since the last one")
+				.register(registry);
+		FunctionCounter.builder("orders.journal.projected", this, s -> s.projected)
+				.description("Journaled orders written to the database")
+				.register(registry);
+
+		this.projector = new Thread(this::projectLoop, "order-projector");
+		this.projector.setDaemon(true);
+		this.projector.start();
+	}
+
+	/**
+	 * Lock for all submissions of one user, to be held from the idempotency check until
+	 * the order is journaled.
+	 */
+	public Lock userLock(long userId) {
+		return userLocks[(int) Math.floorMod(userId, (long) LOCK_STRIPES)];
+	}
+
+	/**
+	 * Assigns ids to a new order, as built by {@link UserOrder#createFromCart}. Has to run
+	 * inside a transaction, which is used to draw the ids.
+	 */
+	public void assignIds(UserOrder order) {
+		SharedSessionContractImplementor session = entityManager.unwrap(SharedSessionContractImplementor.class);
+		order.setId(nextId(session, UserOrder.class));
+		for (OrderItem line : order.getItems()) {
+			line.setId(nextId(session, OrderItem.class));
+		}
+	}
+
+	/**
+	 * Journals an order with ids assigned by {@link #assignIds(UserOrder)} and returns
+	 * once it is durable. Needs no transaction, so no connection is held while waiting.
+	 *
+	 * @throws IllegalStateException if the order could not be written
+	 */
+	public OrderView append(long userId, UserOrder order) {
+		JournaledOrder journaled = new JournaledOrder(userId, order);
+		try {
+			addPending(journaled);
+			journal.append(journaled.encode()).join();
+		} catch (IOException | IllegalStateException | CompletionException e) {
+			removePending(journaled);
+			throw new IllegalStateException("Order could not be written to the journal", e);
+		}
+		return OrderView.from(order);
+	}
+
+	public Optional<OrderView> findByIdempotencyKey(long userId, String idempotencyKey) {
+		if (idempotencyKey == null) {
+			return Optional.empty();
+		}
+		return Optional.ofNullable(pendingByKey.get(pendingKey(userId, idempotencyKey)))
+				.map(journaled -> OrderView.from(journaled.getOrder()));
+	}
+
+	public Optional<OrderView> findOrder(long userId, long orderId) {
+		return Optional.ofNullable(pendingById.get(orderId))
+				.filter(journaled -> journaled.getUserId() == userId)
+				.map(journaled -> OrderView.from(journaled.getOrder()));
+	}
+
+	/**
+	 * Summaries of the not yet projected orders of the user with ids below
+	 * {@code cursor}, newest first.
+	 */
+	public List<OrderSummary> findSummaries(long userId, long cursor) {
+		return pendingById.values().stream()
+				.filter(journaled -> journaled.getUserId() == userId && journaled.getOrder().getId() < cursor)
+				.map(journaled -> new OrderSummary(journaled.getOrder().getId(), journaled.getOrder().getTotal(),
+						journaled.getItemCount(), journaled.getOrder().getCreatedAt()))
+				.sorted((a, b) -> Long.compare(b.getId(), a.getId()))
+				.collect(Collectors.toList());
+	}
+
+	@Override
+	public void destroy() throws InterruptedException {
+		stopping.countDown();
+		projector.join();
+		journal.close();
+		try {
+			while (projectBatch()) {
+				// next batch
+			}
+		} catch (RuntimeException e) {
+			log.warn("{} journaled orders are projected on the next start", pendingById.size(), e);
+		}
+	}
+
+	private void projectLoop() {
+		try {
+			long wait = 0;
+			while (!stopping.await(wait, TimeUnit.MILLISECONDS)) {
+				try {
+					wait = projectBatch() ? 0 : pollMillis;
+				} catch (RuntimeException e) {
+					log.warn("Projecting journaled orders failed, retrying", e);
+					wait = Math.max(pollMillis, 1000);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Projects the next batch of durable records; a batch that fails is kept and tried
+	 * again on the next call.
+	 *
+	 * @return whether there was anything to project
+	 */
+	private boolean projectBatch() {
+		for (byte[] payload = unprojected.size() < batchSize ? reader.next() : null; payload != null;
+				payload = unprojected.size() < batchSize ? reader.next() : null) {
+			unprojected.add(decode(payload));
+		}
+		if (unprojected.isEmpty()) {
+			return false;
+		}
+
+		transactionTemplate.execute(status -> {
+			insert(unprojected);
+			return null;
+		});
+		writeCheckpoint(reader.getPosition());
+		for (JournaledOrder journaled : unprojected) {
+			removePending(journaled);
+		}
+		projected += unprojected.size();
+		unprojected.clear();
+		try {
+			journal.deleteSegmentsBefore(reader.getPosition());
+		} catch (IOException e) {
+			log.warn("Deleting projected order journal segments failed", e);
+		}
+		return true;
+	}
+
+	private void insert(List<JournaledOrder> batch) {
+		List<Long> ids = batch.stream().map(journaled -> journaled.getOrder().getId()).collect(Collectors.toList());
+		Set<Long> existing = new HashSet<>(namedJdbcTemplate.queryForList(
+				"select id from user_order where id in (:ids)", Collections.singletonMap("ids", ids), Long.class));
+
+		List<Object[]> orders = new ArrayList<>();
+		List<Object[]> lines = new ArrayList<>();
+		for (JournaledOrder journaled : batch) {
+			UserOrder order = journaled.getOrder();
+			if (existing.contains(order.getId())) {
+				continue;
+			}
+			orders.add(new Object[] { order.getId(), journaled.getUserId(), order.getTotal(),
+					Timestamp.from(order.getCreatedAt()), order.getIdempotencyKey() });
+			for (OrderItem line : order.getItems()) {
+				lines.add(new Object[] { line.getId(), order.getId(), line.getItem().getId(), line.getQuantity(),
+						line.getUnitPrice() });
+			}
+		}
+		jdbcTemplate.batchUpdate(INSERT_ORDER, orders);
+		jdbcTemplate.batchUpdate(INSERT_ORDER_ITEM, lines);
+	}
+
+	private JournaledOrder decode(byte[] payload) {
+		return JournaledOrder.decode(payload, id -> itemCatalog.findById(id).orElseGet(() -> {
+			Item item = new Item();
+			item.setId(id);
+			return item;
+		}));
+	}
+
+	private void addPending(JournaledOrder journaled) {
+		pendingById.put(journaled.getOrder().getId(), journaled);
+		String key = journaled.getOrder().getIdempotencyKey();
+		if (key != null) {
+			pendingByKey.put(pendingKey(journaled.getUserId(), key), journaled);
+		}
+	}
+
+	private void removePending(JournaledOrder journaled) {
+		String key = journaled.getOrder().getIdempotencyKey();
+		if (key != null) {
+			pendingByKey.remove(pendingKey(journaled.getUserId(), key), journaled);
+		}
+		pendingById.remove(journaled.getOrder().getId(), journaled);
+	}
+
+	private long readCheckpoint() throws IOException {
+		if (!Files.exists(checkpointFile)) {
+			return 0;
+		}
+		return Long.parseLong(new String(Files.readAllBytes(checkpointFile), StandardCharsets.US_ASCII).trim());
+	}
+
+	private void writeCheckpoint(long position) {
+		Path temp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+		try {
+			Files.write(temp, Long.toString(position).getBytes(StandardCharsets.US_ASCII));
+			Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			// a stale checkpoint only means projecting some orders again after a restart
+			log.warn("Writing the order journal checkpoint failed", e);
+		}
+	}
+
+	private static long nextId(SharedSessionContractImplementor session, Class<?> entity) {
+		IdentifierGenerator generator = session.getFactory().getMetamodel().entityPersister(entity)
+				.getIdentifierGenerator();
+		return ((Number) generator.generate(session, null)).longValue();
+	}
+
+	private static String pendingKey(long userId, String idempotencyKey) {
+		return userId + ":" + idempotencyKey;
+	}
+}
@@ -0,0 +1,286 @@
+package com.example.demo.logging;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Layout;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+
+/**
+ * Ships log lines to a TCP collector without ever doing socket I/O on the logging
+ * thread. Events go into a bounded ring buffer and a single worker thread formats and
+ * writes them in batches. When the buffer is full, events are dropped (the default) or
+ * the caller waits up to {@code blockTimeoutMillis} before dropping, depending on the
+ * {@link OverflowPolicy}. While the collector is unreachable the worker keeps retrying
+ * the connection every {@code reconnectDelayMillis}.
+ */
+public class BatchingTcpAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+
+	public enum OverflowPolicy {
+		DROP, BLOCK
+	}
+
+	private String remoteHost = "127.0.0.1";
+	private int port;
+	private int queueSize = 8192;
+	private int batchSize = 256;
+	private long flushIntervalMillis = 200;
+	private long reconnectDelayMillis = 1000;
+	private int connectTimeoutMillis = 500;
+	private long blockTimeoutMillis = 10;
+	private OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+	private Layout<ILoggingEvent> layout;
+
+	private final AtomicLong sentEvents = new AtomicLong();
+	private final AtomicLong droppedEvents = new AtomicLong();
+	private final AtomicLong failedWrites = new AtomicLong();
+
+	private BlockingQueue<ILoggingEvent> queue;
+	private Thread worker;
+	private volatile boolean running;
+	private Socket socket;
+	private OutputStream out;
+
+	@Override
+	public void start() {
+		if (isStarted()) {
+			return;
+		}
+		if (layout == null) {
+			addError("No layout set for the appender named [" + name + "].");
+			return;
+		}
+		if (port <= 0) {
+			addError("No port set for the appender named [" + name + "].");
+			return;
+		}
+		queue = new ArrayBlockingQueue<>(queueSize);
+		running = true;
+		worker = new Thread(this::run, "log-shipper-" + name);
+		worker.setDaemon(true);
+		worker.start();
+		super.start();
+	}
+
+	@Override
+	public void stop() {
+		if (!isStarted()) {
+			return;
+		}
+		super.stop();
+		running = false;
+		worker.interrupt();
+		try {
+			worker.join(Math.max(flushIntervalMillis, reconnectDelayMillis) + connectTimeoutMillis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		closeSocket();
+	}
+
+	@Override
+	protected void append(ILoggingEvent event) {
+		event.prepareForDeferredProcessing();
+		boolean queued;
+		if (overflowPolicy == OverflowPolicy.BLOCK) {
+			try {
+				queued = queue.offer(event, blockTimeoutMillis, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				queued = false;
+			}
+		} else {
+			queued = queue.offer(event);
+		}
+		if (!queued) {
+			droppedEvents.incrementAndGet();
+		}
+	}
+
+	private void run() {
+		List<ILoggingEvent> batch = new ArrayList<>(batchSize);
+		while (running || !queue.isEmpty()) {
+			try {
+				if (!connect()) {
+					if (!running) {
+						break;
+					}
+					Thread.sleep(reconnectDelayMillis);
+					continue;
+				}
+				ILoggingEvent first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				queue.drainTo(batch, batchSize - 1);
+				write(batch);
+				batch.clear();
+			} catch (InterruptedException e) {
+				// stop() interrupts the worker; loop once more to flush what is left.
+				if (running) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+		}
+		droppedEvents.addAndGet(queue.size());
+		queue.clear();
+	}
+
+	private boolean connect() {
+		if (socket != null) {
+			return true;
+		}
+		Socket candidate = new Socket();
+		try {
+			candidate.connect(new InetSocketAddress(remoteHost, port), connectTimeoutMillis);
+			socket = candidate;
+			out = new BufferedOutputStream(candidate.getOutputStream(), 64 * 1024);
+			return true;
+		} catch (IOException e) {
+			try {
+				candidate.close();
+			} catch (IOException ignored) {
+				// nothing left to clean up
+			}
+			return false;
+		}
+	}
+
+	private void write(List<ILoggingEvent> batch) {
+		StringBuilder lines = new StringBuilder(batch.size() * 128);
+		for (ILoggingEvent event : batch) {
+			lines.append(layout.doLayout(event));
+		}
+		try {
+			out.write(lines.toString().getBytes(StandardCharsets.UTF_8));
+			out.flush();
+			sentEvents.addAndGet(batch.size());
+		} catch (IOException e) {
+			failedWrites.incrementAndGet();
+			droppedEvents.addAndGet(batch.size());
+			closeSocket();
+		}
+	}
+
+	private void closeSocket() {
+		if (socket == null) {
+			return;
+		}
+		try {
+			socket.close();
+		} catch (IOException ignored) {
+			// the connection is discarded either way
+		}
+		socket = null;
+		out = null;
+	}
+
+	public long getSentEvents() {
+		return sentEvents.get();
+	}
+
+	public long getDroppedEvents() {
+		return droppedEvents.get();
+	}
+
+	public long getFailedWrites() {
+		return failedWrites.get();
+	}
+
+	public int getQueuedEvents() {
+		return queue == null ? 0 : queue.size();
+	}
+
+	public String getRemoteHost() {
+		return remoteHost;
+	}
+
+	public void setRemoteHost(String remoteHost) {
+		this.remoteHost = remoteHost;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public void setPort(int port) {
+		this.port = port;
+	}
+
+	public int getQueueSize() {
+		return queueSize;
+	}
+
+	public void setQueueSize(int queueSize) {
+		this.queueSize = queueSize;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public long getFlushIntervalMillis() {
+		return flushIntervalMillis;
+	}
+
+	public void setFlushIntervalMillis(long flushIntervalMillis) {
+		this.flushIntervalMillis = flushIntervalMillis;
+	}
+
+	public long getReconnectDelayMillis() {
+		return reconnectDelayMillis;
+	}
+
+	public void setReconnectDelayMillis(long reconnectDelayMillis) {
+		this.reconnectDelayMillis = reconnectDelayMillis;
+	}
+
+	public int getConnectTimeoutMillis() {
+		return connectTimeoutMillis;
+	}
+
+	public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+		this.connectTimeoutMillis = connectTimeoutMillis;
+	}
+
+	public long getBlockTimeoutMillis() {
+		return blockTimeoutMillis;
+	}
+
+	public void setBlockTimeoutMillis(long blockTimeoutMillis) {
+		this.blockTimeoutMillis = blockTimeoutMillis;
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	public Layout<ILoggingEvent> getLayout() {
+		return layout;
+	}
+
+	public void setLayout(Layout<ILoggingEvent> layout) {
+		this.layout = layout;
+	}
+}
@@ -0,0 +1,80 @@
+package com.example.demo.metrics;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Counts the SQL statements Hibernate prepares for the current request. Registered
+ * through {@code hibernate.session_factory.statement_inspector}, so Hibernate creates
+ * the instance itself; the count of the request being handled is bound to the thread
+ * by {@link RequestMetricsFilter}. Work a request hands to another thread is counted
+ * when it runs through {@link #propagating(Executor)} or
+ * {@link #forCurrentRequest(Executor)}. Statements prepared outside a request are not
+ * counted.
+ */
+public class QueryCounter implements StatementInspector {
+
+	private static final ThreadLocal<AtomicInteger> COUNT = new ThreadLocal<>();
+
+	@Override
+	public String inspect(String sql) {
+		AtomicInteger count = COUNT.get();
+		if (count != null) {
+			count.incrementAndGet();
+		}
+		return sql;
+	}
+
+	/**
+	 * Wraps {@code executor} so that tasks count their statements towards the request
+	 * that submitted them, including stages of a {@code CompletableFuture} completed by
+	 * the task.
+	 */
+	public static Executor propagating(Executor executor) {
+		return task -> executor.execute(propagate(task));
+	}
+
+	/**
+	 * Wraps {@code executor} so that tasks count their statements towards the request
+	 * handled on the calling thread, wherever they are submitted from later on; for work
+	 * a request keeps submitting from container callbacks.
+	 */
+	public static Executor forCurrentRequest(Executor executor) {
+		AtomicInteger count = COUNT.get();
+		if (count == null) {
+			return executor;
+		}
+		return task -> executor.execute(counting(task, count));
+	}
+
+	static Runnable propagate(Runnable task) {
+		AtomicInteger count = COUNT.get();
+		return count == null ? task : counting(task, count);
+	}
+
+	private static Runnable counting(Runnable task, AtomicInteger count) {
+		return () -> {
+			AtomicInteger previous = COUNT.get();
+			COUNT.set(count);
+			try {
+				task.run();
+			} finally {
+				bind(previous);
+			}
+		};
+	}
+
+	/**
+	 * Counts statements on this thread into {@code count}, or stops counting if it is
+	 * {@code null}.
+	 */
+	static void bind(AtomicInteger count) {
+		if (count == null) {
+			COUNT.remove();
+		} else {
+			COUNT.set(count);
+		}
+	}
+}
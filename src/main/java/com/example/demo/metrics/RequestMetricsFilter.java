@@ -0,0 +1,151 @@
+package com.example.demo.metrics;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Records how many SQL statements each request issued as the
+ * {@code http.server.requests.queries} summary, tagged like the request timers Spring
+ * Boot already records. Runs ahead of the security filter chain so statements issued
+ * during authentication are counted too. Requests above {@code metrics.query-budget}
+ * statements are logged and counted in {@code http.server.requests.query-budget.exceeded}
+ * so N+1 regressions show up without reading SQL logs.
+ * <p>
+ * Asynchronous requests are recorded when they complete rather than when the first
+ * dispatch returns, with the statements of their async dispatches and of the work they
+ * handed to a {@link QueryCounter#propagating propagating} executor.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 2)
+public class RequestMetricsFilter extends OncePerRequestFilter {
+
+	private static final Logger log = LoggerFactory.getLogger(RequestMetricsFilter.class);
+
+	private static final String COUNT_ATTRIBUTE = RequestMetricsFilter.class.getName() + ".count";
+
+	private static final String LISTENER_ATTRIBUTE = RequestMetricsFilter.class.getName() + ".listener";
+
+	private final MeterRegistry registry;
+
+	private final int queryBudget;
+
+	public RequestMetricsFilter(MeterRegistry registry, @Value("${metrics.query-budget:10}") int queryBudget) {
+		this.registry = registry;
+		this.queryBudget = queryBudget;
+	}
+
+	@Override
+	protected boolean shouldNotFilterAsyncDispatch() {
+		return false;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+		AtomicInteger count = (AtomicInteger) request.getAttribute(COUNT_ATTRIBUTE);
+		if (count == null) {
+			count = new AtomicInteger();
+			request.setAttribute(COUNT_ATTRIBUTE, count);
+		}
+		QueryCounter.bind(count);
+		try {
+			chain.doFilter(request, response);
+		} finally {
+			QueryCounter.bind(null);
+			boolean listening = request.getAttribute(LISTENER_ATTRIBUTE) != null;
+			if (request.isAsyncStarted() && !listening) {
+				request.setAttribute(LISTENER_ATTRIBUTE, Boolean.TRUE);
+				request.getAsyncContext().addListener(new RecordOnComplete(request, response, count));
+			} else if (!listening) {
+				record(request, response, count.get());
+			}
+		}
+	}
+
+	private void record(HttpServletRequest request, HttpServletResponse response, int queries) {
+		String uri = uri(request, response);
+		DistributionSummary.builder("http.server.requests.queries")
+				.description("SQL statements issued per request")
+				.tags("method", request.getMethod(), "uri", uri)
+				.register(registry)
+				.record(queries);
+
+		if (queries > queryBudget) {
+			Counter.builder("http.server.requests.query-budget.exceeded")
+					.tags("method", request.getMethod(), "uri", uri)
+					.register(registry)
+					.increment();
+			log.warn("{} {} issued {} SQL statements, over the budget of {}", request.getMethod(), uri, queries,
+					queryBudget);
+		}
+	}
+
+	private class RecordOnComplete implements AsyncListener {
+
+		private final HttpServletRequest request;
+
+		private final HttpServletResponse response;
+
+		private final AtomicInteger count;
+
+		RecordOnComplete(HttpServletRequest request, HttpServletResponse response, AtomicInteger count) {
+			this.request = request;
+			this.response = response;
+			this.count = count;
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) {
+			record(request, response, count.get());
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) {
+			// followed by onComplete
+		}
+
+		@Override
+		public void onError(AsyncEvent event) {
+			// followed by onComplete
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) {
+			// listeners have to register again when a dispatch starts async processing anew
+			event.getAsyncContext().addListener(this);
+		}
+	}
+
+	/**
+	 * The matched handler pattern keeps the tag cardinality bounded. Requests answered by
+	 * a filter, such as {@code /login}, have no pattern and are tagged with their path
+	 * unless they failed.
+	 */
+	private static String uri(HttpServletRequest request, HttpServletResponse response) {
+		Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+		if (pattern != null) {
+			return pattern.toString();
+		}
+		return response.getStatus() < 400 ? request.getServletPath() : "UNMAPPED";
+	}
+}
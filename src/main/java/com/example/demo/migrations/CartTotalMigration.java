@@ -0,0 +1,60 @@
+package com.example.demo.migrations;
+
+import java.sql.ResultSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Fills {@code cart.total_cents} for carts stored before the total was kept in cents,
+ * recognised by the legacy {@code total} column. Schema update adds
+ * {@code total_cents} to such a table with its default of 0, so the total of every
+ * cart is recomputed from its line items the way the cart itself adds them up (unit
+ * price rounded to cents, times the quantity), and the legacy column is dropped
+ * afterwards. Runs after {@link LineItemsMigration}, which provides the line items of
+ * even older carts; does nothing when the legacy column is not present.
+ */
+@Component
+@Order(2)
+public class CartTotalMigration implements ApplicationRunner {
+
+	private static final Logger log = LoggerFactory.getLogger(CartTotalMigration.class);
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Override
+	@Transactional
+	public void run(ApplicationArguments args) {
+		if (!columnExists("cart", "total")) {
+			return;
+		}
+
+		int migrated = jdbcTemplate.update(
+				"update cart c set total_cents = coalesce((" +
+				"select sum(ci.quantity * cast(round(ci.unit_price * 100, 0) as bigint)) " +
+				"from cart_item ci where ci.cart_id = c.id), 0)");
+		jdbcTemplate.execute("alter table cart drop column total");
+
+		log.info("Migrated the totals of {} carts to total_cents", migrated);
+	}
+
+	private boolean columnExists(String table, String column) {
+		return jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+			boolean upperCase = connection.getMetaData().storesUpperCaseIdentifiers();
+			try (ResultSet columns = connection.getMetaData().getColumns(null, null,
+					upperCase ? table.toUpperCase() : table,
+					upperCase ? column.toUpperCase() : column)) {
+				return columns.next();
+			}
+		});
+	}
+}
@@ -0,0 +1,71 @@
+package com.example.demo.migrations;
+
+import java.sql.ResultSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Moves carts and orders stored in the legacy {@code cart_items} and
+ * {@code user_order_items} join tables (one row per unit) into {@code cart_item} and
+ * {@code order_item} line items (one row per item with a quantity) and drops the old
+ * tables afterwards. Does nothing when the legacy tables are not present. New line
+ * ids are drawn from the same sequences Hibernate uses; a raw sequence value never
+ * falls inside a block the pooled optimizer hands out later.
+ */
+@Component
+@Order(1)
+public class LineItemsMigration implements ApplicationRunner {
+
+	private static final Logger log = LoggerFactory.getLogger(LineItemsMigration.class);
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Override
+	@Transactional
+	public void run(ApplicationArguments args) {
+		migrate("cart_items",
+				"insert into cart_item (id, cart_id, item_id, quantity, unit_price) " +
+				"select next value for cart_item_seq, g.* from (" +
+				"select li.cart_id, li.items_id, count(*), i.price " +
+				"from cart_items li join item i on i.id = li.items_id " +
+				"group by li.cart_id, li.items_id, i.price) g");
+		migrate("user_order_items",
+				"insert into order_item (id, order_id, item_id, quantity, unit_price) " +
+				"select next value for order_item_seq, g.* from (" +
+				"select li.user_order_id, li.items_id, count(*), i.price " +
+				"from user_order_items li join item i on i.id = li.items_id " +
+				"group by li.user_order_id, li.items_id, i.price) g");
+	}
+
+	private void migrate(String legacyTable, String insertLines) {
+		if (!tableExists(legacyTable)) {
+			return;
+		}
+
+		int migrated = jdbcTemplate.update(insertLines);
+		jdbcTemplate.execute("drop table " + legacyTable);
+
+		log.info("Migrated {} line items from {}", migrated, legacyTable);
+	}
+
+	private boolean tableExists(String name) {
+		return jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+			String table = connection.getMetaData().storesUpperCaseIdentifiers()
+					? name.toUpperCase()
+					: name;
+			try (ResultSet tables = connection.getMetaData().getTables(null, null, table, null)) {
+				return tables.next();
+			}
+		});
+	}
+}
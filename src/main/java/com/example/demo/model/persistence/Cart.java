@@ -6,16 +6,20 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
-import javax.persistence.ManyToMany;
 import javax.persistence.OneToMany;
-import javax.persistence.OneToOne;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
+import javax.persistence.Version;
 
+import org.hibernate.annotations.ColumnDefault;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 @Entity
@@ -23,38 +27,62 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 public class Cart {
 	
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "cart_id")
+	@SequenceGenerator(name = "cart_id", sequenceName = "cart_seq", allocationSize = 50)
 	@JsonProperty
 	@Column
 	private Long id;
 	
-	@ManyToMany
+	@OneToMany(mappedBy = "cart", cascade = CascadeType.ALL, orphanRemoval = true)
 	@JsonProperty
-	@Column
-    private List<Item> items;
+    private List<CartItem> items;
 	
-	@OneToOne(mappedBy = "cart")
-	@JsonProperty
-    private User user;
+	/**
+	 * Running total in minor units (cents). Only converted to {@link BigDecimal} when
+	 * the cart is read through {@link #getTotal()}, e.g. for the JSON response. The
+	 * column default lets schema update add it to a populated table; existing carts are
+	 * filled in by {@link com.example.demo.migrations.CartTotalMigration}.
+	 */
+	@Column(name = "total_cents", nullable = false)
+	@ColumnDefault("0")
+	@JsonIgnore
+	private long totalCents;
+
+	/**
+	 * Optimistic lock; concurrent read-modify-write updates of the same cart fail with an
+	 * {@link javax.persistence.OptimisticLockException} instead of silently overwriting
+	 * each other. Defaults to 0 in the schema so it can be added to a populated table.
+	 */
+	@Version
+	@Column(nullable = false)
+	@ColumnDefault("0")
+	@JsonIgnore
+	private long version;
 	
-	@Column
 	@JsonProperty
-	private BigDecimal total;
-	
 	public BigDecimal getTotal() {
-		return total;
+		return BigDecimal.valueOf(totalCents, 2);
 	}
 
 	public void setTotal(BigDecimal total) {
-		this.total = total;
+		this.totalCents = total == null ? 0 : CartItem.toCents(total);
 	}
 
-	public User getUser() {
-		return user;
+	@JsonIgnore
+	public long getTotalCents() {
+		return totalCents;
 	}
 
-	public void setUser(User user) {
-		this.user = user;
+	@JsonIgnore
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Only for carts kept outside the database; JPA maintains the version itself.
+	 */
+	public void setVersion(long version) {
+		this.version = version;
 	}
 
 	public Long getId() {
@@ -65,33 +93,67 @@ public class Cart {
 		this.id = id;
 	}
 
-	public List<Item> getItems() {
+	public List<CartItem> getItems() {
 		return items;
 	}
 
-	public void setItems(List<Item> items) {
+	public void setItems(List<CartItem> items) {
 		this.items = items;
 	}
+
+	public CartItem getLine(Item item) {
+		if(items == null) {
+			return null;
+		}
+		for(CartItem line : items) {
+			if(line.getItem().equals(item)) {
+				return line;
+			}
+		}
+		return null;
+	}
 	
 	public void addItem(Item item) {
+		addItem(item, 1);
+	}
+
+	public void addItem(Item item, int quantity) {
+		if(quantity <= 0) {
+			return;
+		}
 		if(items == null) {
 			items = new ArrayList<>();
 		}
-		items.add(item);
-		if(total == null) {
-			total = new BigDecimal(0);
+		CartItem line = getLine(item);
+		if(line == null) {
+			line = new CartItem(this, item);
+			items.add(line);
 		}
-		total = total.add(item.getPrice());
+		line.setQuantity(line.getQuantity() + quantity);
+		totalCents += line.getUnitPriceCents() * quantity;
 	}
 	
+	public void clear() {
+		if(items != null) {
+			items.clear();
+		}
+		totalCents = 0;
+	}
+
 	public void removeItem(Item item) {
-		if(items == null) {
-			items = new ArrayList<>();
+		removeItem(item, 1);
+	}
+
+	public void removeItem(Item item, int quantity) {
+		CartItem line = getLine(item);
+		if(line == null || quantity <= 0) {
+			return;
 		}
-		items.remove(item);
-		if(total == null) {
-			total = new BigDecimal(0);
+		int removed = Math.min(quantity, line.getQuantity());
+		line.setQuantity(line.getQuantity() - removed);
+		if(line.getQuantity() == 0) {
+			items.remove(line);
 		}
-		total = total.subtract(item.getPrice());
+		totalCents -= line.getUnitPriceCents() * removed;
 	}
 }
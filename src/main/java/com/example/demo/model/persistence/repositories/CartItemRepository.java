@@ -0,0 +1,26 @@
+package com.example.demo.model.persistence.repositories;
+
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.example.demo.model.persistence.CartItem;
+
+public interface CartItemRepository extends JpaRepository<CartItem, Long> {
+	Optional<CartItem> findByCartIdAndItemId(long cartId, long itemId);
+
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query("update CartItem l set l.quantity = l.quantity + :delta where l.id = :id")
+	int addQuantity(@Param("id") long id, @Param("delta") int delta);
+
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query("update CartItem l set l.quantity = :quantity where l.id = :id and l.quantity = :expected")
+	int compareAndSetQuantity(@Param("id") long id, @Param("expected") int expected, @Param("quantity") int quantity);
+
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query("delete from CartItem l where l.id = :id and l.quantity = 0")
+	int deleteIfEmpty(@Param("id") long id);
+}
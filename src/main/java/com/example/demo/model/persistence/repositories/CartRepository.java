@@ -1,10 +1,32 @@
 package com.example.demo.model.persistence.repositories;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import com.example.demo.model.persistence.Cart;
 import com.example.demo.model.persistence.User;
 
 public interface CartRepository extends JpaRepository<Cart, Long> {
-	Cart findByUser(User user);
+	@Query("select u.cart from User u where u = :user")
+	Cart findByUser(@Param("user") User user);
+
+	@Query("select distinct c from Cart c left join fetch c.items l left join fetch l.item where c.id = :id")
+	Optional<Cart> findWithItemsById(@Param("id") long id);
+
+	@Query("select distinct c from Cart c left join fetch c.items l left join fetch l.item where c.id in :ids")
+	List<Cart> findWithItemsByIdIn(@Param("ids") Collection<Long> ids);
+
+	/**
+	 * Adjusts the running total in place. Bumps the version so that a concurrent
+	 * read-modify-write of the same cart, such as an order submission, notices the change.
+	 */
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query("update Cart c set c.totalCents = c.totalCents + :delta, c.version = c.version + 1 where c.id = :id")
+	int addToTotal(@Param("id") long id, @Param("delta") long delta);
 }
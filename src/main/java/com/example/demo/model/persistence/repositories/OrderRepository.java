@@ -1,12 +1,35 @@
 package com.example.demo.model.persistence.repositories;
 
 import java.util.List;
+import java.util.Optional;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import com.example.demo.model.persistence.User;
 import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.responses.OrderSummary;
 
 public interface OrderRepository extends JpaRepository<UserOrder, Long> {
 	List<UserOrder> findByUser(User user);
+
+	@EntityGraph(attributePaths = { "items", "items.item" })
+	Optional<UserOrder> findByUserIdAndIdempotencyKey(long userId, String idempotencyKey);
+
+	@Query("select new com.example.demo.model.responses.OrderSummary(o.id, o.total, sum(oi.quantity), o.createdAt) " +
+			"from UserOrder o left join o.items oi " +
+			"where o.user.id = :userId and o.id < :before " +
+			"group by o.id, o.total, o.createdAt " +
+			"order by o.id desc")
+	List<OrderSummary> findSummariesByUserId(@Param("userId") long userId, @Param("before") long before,
+			Pageable pageable);
+
+	@Query("select distinct o from UserOrder o " +
+			"left join fetch o.items oi " +
+			"left join fetch oi.item " +
+			"where o.id = :id and o.user.id = :userId")
+	Optional<UserOrder> findWithItemsByIdAndUserId(@Param("id") long id, @Param("userId") long userId);
 }
@@ -0,0 +1,46 @@
+package com.example.demo.model.requests;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * One step of a {@link ModifyCartBatchRequest}.
+ */
+public class CartOperation {
+
+	public enum Action {
+		ADD, REMOVE
+	}
+
+	@JsonProperty
+	private Action action = Action.ADD;
+
+	@JsonProperty
+	private long itemId;
+
+	@JsonProperty
+	private int quantity = 1;
+
+	public Action getAction() {
+		return action;
+	}
+
+	public void setAction(Action action) {
+		this.action = action;
+	}
+
+	public long getItemId() {
+		return itemId;
+	}
+
+	public void setItemId(long itemId) {
+		this.itemId = itemId;
+	}
+
+	public int getQuantity() {
+		return quantity;
+	}
+
+	public void setQuantity(int quantity) {
+		this.quantity = quantity;
+	}
+}
@@ -0,0 +1,53 @@
+package com.example.demo.model.responses;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.CartItem;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Response body for a cart. Built while the cart lines are still attached, so that
+ * serializing it never touches a lazy association.
+ */
+public class CartView {
+
+	@JsonProperty
+	private Long id;
+
+	@JsonProperty
+	private List<LineItemView> items;
+
+	@JsonProperty
+	private BigDecimal total;
+
+	public CartView(Long id, List<LineItemView> items, BigDecimal total) {
+		this.id = id;
+		this.items = items;
+		this.total = total;
+	}
+
+	public static CartView from(Cart cart) {
+		List<LineItemView> items = new ArrayList<>();
+		if (cart.getItems() != null) {
+			for (CartItem line : cart.getItems()) {
+				items.add(LineItemView.from(line));
+			}
+		}
+		return new CartView(cart.getId(), items, cart.getTotal());
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public List<LineItemView> getItems() {
+		return items;
+	}
+
+	public BigDecimal getTotal() {
+		return total;
+	}
+}
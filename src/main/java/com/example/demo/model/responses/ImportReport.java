@@ -0,0 +1,76 @@
+package com.example.demo.model.responses;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class ImportReport {
+
+	public static class Rejection {
+
+		@JsonProperty
+		private final long line;
+
+		@JsonProperty
+		private final String reason;
+
+		public Rejection(long line, String reason) {
+			this.line = line;
+			this.reason = reason;
+		}
+
+		public long getLine() {
+			return line;
+		}
+
+		public String getReason() {
+			return reason;
+		}
+	}
+
+	@JsonProperty
+	private final long processed;
+
+	@JsonProperty
+	private final long inserted;
+
+	@JsonProperty
+	private final long updated;
+
+	@JsonProperty
+	private final long rejected;
+
+	/**
+	 * The first rejected rows; {@link #getRejected()} counts all of them.
+	 */
+	@JsonProperty
+	private final List<Rejection> rejections;
+
+	public ImportReport(long processed, long inserted, long updated, long rejected, List<Rejection> rejections) {
+		this.processed = processed;
+		this.inserted = inserted;
+		this.updated = updated;
+		this.rejected = rejected;
+		this.rejections = rejections;
+	}
+
+	public long getProcessed() {
+		return processed;
+	}
+
+	public long getInserted() {
+		return inserted;
+	}
+
+	public long getUpdated() {
+		return updated;
+	}
+
+	public long getRejected() {
+		return rejected;
+	}
+
+	public List<Rejection> getRejections() {
+		return rejections;
+	}
+}
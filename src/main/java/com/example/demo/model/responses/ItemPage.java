@@ -0,0 +1,30 @@
+package com.example.demo.model.responses;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class ItemPage {
+
+	@JsonProperty
+	private List<ItemView> items;
+
+	/**
+	 * Cursor to pass to the next page request, {@code null} on the last page.
+	 */
+	@JsonProperty
+	private Long nextCursor;
+
+	public ItemPage(List<ItemView> items, Long nextCursor) {
+		this.items = items;
+		this.nextCursor = nextCursor;
+	}
+
+	public List<ItemView> getItems() {
+		return items;
+	}
+
+	public Long getNextCursor() {
+		return nextCursor;
+	}
+}
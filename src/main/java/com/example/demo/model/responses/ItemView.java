@@ -0,0 +1,48 @@
+package com.example.demo.model.responses;
+
+import java.math.BigDecimal;
+
+import com.example.demo.model.persistence.Item;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class ItemView {
+
+	@JsonProperty
+	private Long id;
+
+	@JsonProperty
+	private String name;
+
+	@JsonProperty
+	private BigDecimal price;
+
+	@JsonProperty
+	private String description;
+
+	public ItemView(Long id, String name, BigDecimal price, String description) {
+		this.id = id;
+		this.name = name;
+		this.price = price;
+		this.description = description;
+	}
+
+	public static ItemView from(Item item) {
+		return new ItemView(item.getId(), item.getName(), item.getPrice(), item.getDescription());
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public BigDecimal getPrice() {
+		return price;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+}
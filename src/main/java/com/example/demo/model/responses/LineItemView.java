@@ -0,0 +1,59 @@
+package com.example.demo.model.responses;
+
+import java.math.BigDecimal;
+
+import com.example.demo.model.persistence.CartItem;
+import com.example.demo.model.persistence.OrderItem;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * One line of a cart or an order: the item is reduced to its id and name, the price
+ * is the unit price captured on the line.
+ */
+public class LineItemView {
+
+	@JsonProperty
+	private Long itemId;
+
+	@JsonProperty
+	private String name;
+
+	@JsonProperty
+	private int quantity;
+
+	@JsonProperty
+	private BigDecimal unitPrice;
+
+	public LineItemView(Long itemId, String name, int quantity, BigDecimal unitPrice) {
+		this.itemId = itemId;
+		this.name = name;
+		this.quantity = quantity;
+		this.unitPrice = unitPrice;
+	}
+
+	public static LineItemView from(CartItem line) {
+		return new LineItemView(line.getItem().getId(), line.getItem().getName(), line.getQuantity(),
+				line.getUnitPrice());
+	}
+
+	public static LineItemView from(OrderItem line) {
+		return new LineItemView(line.getItem().getId(), line.getItem().getName(), line.getQuantity(),
+				line.getUnitPrice());
+	}
+
+	public Long getItemId() {
+		return itemId;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getQuantity() {
+		return quantity;
+	}
+
+	public BigDecimal getUnitPrice() {
+		return unitPrice;
+	}
+}
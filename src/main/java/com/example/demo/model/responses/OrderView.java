@@ -0,0 +1,62 @@
+package com.example.demo.model.responses;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.example.demo.model.persistence.OrderItem;
+import com.example.demo.model.persistence.UserOrder;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Response body for a single order with its lines. The ordering user is left out; the
+ * caller already named them in the request.
+ */
+public class OrderView {
+
+	@JsonProperty
+	private Long id;
+
+	@JsonProperty
+	private List<LineItemView> items;
+
+	@JsonProperty
+	private BigDecimal total;
+
+	@JsonProperty
+	private Instant createdAt;
+
+	public OrderView(Long id, List<LineItemView> items, BigDecimal total, Instant createdAt) {
+		this.id = id;
+		this.items = items;
+		this.total = total;
+		this.createdAt = createdAt;
+	}
+
+	public static OrderView from(UserOrder order) {
+		List<LineItemView> items = new ArrayList<>();
+		if (order.getItems() != null) {
+			for (OrderItem line : order.getItems()) {
+				items.add(LineItemView.from(line));
+			}
+		}
+		return new OrderView(order.getId(), items, order.getTotal(), order.getCreatedAt());
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public List<LineItemView> getItems() {
+		return items;
+	}
+
+	public BigDecimal getTotal() {
+		return total;
+	}
+
+	public Instant getCreatedAt() {
+		return createdAt;
+	}
+}
@@ -0,0 +1,35 @@
+package com.example.demo.model.responses;
+
+import com.example.demo.model.persistence.User;
+import com.example.demo.services.UserSummary;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class UserView {
+
+	@JsonProperty
+	private long id;
+
+	@JsonProperty
+	private String username;
+
+	public UserView(long id, String username) {
+		this.id = id;
+		this.username = username;
+	}
+
+	public static UserView from(User user) {
+		return new UserView(user.getId(), user.getUsername());
+	}
+
+	public static UserView from(UserSummary user) {
+		return new UserView(user.getId(), user.getUsername());
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+}
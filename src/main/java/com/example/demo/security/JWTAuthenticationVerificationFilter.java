@@ -1,9 +1,9 @@
 package com.example.demo.security;
 
-import com.auth0.jwt.JWT;
-import com.auth0.jwt.algorithms.Algorithm;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
 
@@ -13,13 +13,23 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 
 import static com.example.demo.security.SecurityConstants.*;
 
 public class JWTAuthenticationVerificationFilter extends BasicAuthenticationFilter {
+    private VerifiedTokenCache verifiedTokenCache;
+    private Set<String> adminUsers;
 
-    public JWTAuthenticationVerificationFilter(AuthenticationManager authManager) {
+    /**
+     * @param adminUsers users granted the {@link SecurityConstants#ADMIN_ROLE} role
+     */
+    public JWTAuthenticationVerificationFilter(AuthenticationManager authManager, VerifiedTokenCache verifiedTokenCache,
+                                               Set<String> adminUsers) {
         super(authManager);
+        this.verifiedTokenCache = verifiedTokenCache;
+        this.adminUsers = adminUsers;
     }
 
     @Override
@@ -42,14 +52,15 @@ public class JWTAuthenticationVerificationFilter extends BasicAuthenticationFilt
     private UsernamePasswordAuthenticationToken getAuthentication(HttpServletRequest request) {
         String token = request.getHeader(HEADER_STRING);
         if (token != null) {
-            // parse the token.
-            String user = JWT.require(Algorithm.HMAC512(SECRET.getBytes()))
-                    .build()
-                    .verify(token.replace(TOKEN_PREFIX, ""))
-                    .getSubject();
+            // parse the token, unless it has been verified before.
+            String user = verifiedTokenCache.verify(token.replace(TOKEN_PREFIX, ""));
 
             if (user != null) {
-                return new UsernamePasswordAuthenticationToken(user, null, new ArrayList<>());
+                List<GrantedAuthority> authorities = new ArrayList<>();
+                if (adminUsers.contains(user)) {
+                    authorities.add(new SimpleGrantedAuthority("ROLE_" + ADMIN_ROLE));
+                }
+                return new UsernamePasswordAuthenticationToken(user, null, authorities);
             }
             return null;
         }
@@ -0,0 +1,120 @@
+package com.example.demo.security;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.metrics.QueryCounter;
+import com.example.demo.server.RequestExecutionCustomizer;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Bounded pool that runs BCrypt work off the servlet container threads. Once all
+ * workers are busy and the queue is full, new work is rejected immediately with a
+ * {@link RejectedExecutionException}, which callers turn into a 503 response.
+ * <p>
+ * Login waits for its hash in {@link #execute}, on the connector thread serving the
+ * request, so up to {@code threads + queue-capacity} connector threads can be blocked
+ * on this pool at once. With requests on Tomcat's platform worker pool that sum must
+ * stay at or below half of {@code server.tomcat.max-threads}, so that a burst of logins
+ * is turned away with 503s while other requests still find a free thread; startup
+ * fails otherwise. Requests on virtual threads are not limited by it.
+ */
+@Component
+public class PasswordHashingExecutor implements DisposableBean {
+    private final ThreadPoolExecutor executor;
+    private final Executor propagating;
+    private final long retryAfterSeconds;
+
+    public PasswordHashingExecutor(@Value("${security.bcrypt.threads:0}") int threads,
+                                   @Value("${security.bcrypt.queue-capacity:16}") int queueCapacity,
+                                   @Value("${security.bcrypt.retry-after-seconds:1}") long retryAfterSeconds,
+                                   @Value("${server.tomcat.max-threads:200}") int connectorThreads,
+                                   @Value("${server.request-execution:platform}") RequestExecutionCustomizer.Mode requestExecution) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        if (requestExecution == RequestExecutionCustomizer.Mode.PLATFORM && poolSize + queueCapacity > connectorThreads / 2) {
+            throw new IllegalStateException(String.format(
+                    "%d hashing threads plus a queue of %d would let logins block more than half of the %d "
+                            + "connector threads; lower security.bcrypt.threads or security.bcrypt.queue-capacity",
+                    poolSize, queueCapacity, connectorThreads));
+        }
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new HashingThreadFactory(),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.propagating = QueryCounter.propagating(executor);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Runs the task on the hashing pool and waits for its result. Runtime exceptions
+     * thrown by the task are rethrown unchanged.
+     *
+     * @throws RejectedExecutionException if the pool and its queue are full
+     */
+    public <T> T execute(Callable<T> task) {
+        Future<T> future = executor.submit(task);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for password hashing", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Runs the task on the hashing pool without waiting for it, so the calling thread is
+     * free while BCrypt runs. Statements issued by stages the task completes are counted
+     * towards the submitting request.
+     *
+     * @throws RejectedExecutionException if the pool and its queue are full
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, propagating);
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    public int getQueuedTasks() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveTasks() {
+        return executor.getActiveCount();
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    private static class HashingThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "password-hashing-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -2,8 +2,11 @@ package com.example.demo.security;
 
 import com.example.demo.model.persistence.User;
 import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.services.UserCache;
+import com.example.demo.services.UserSummary;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
@@ -11,16 +14,33 @@ import org.springframework.stereotype.Service;
 import static java.util.Collections.emptyList;
 
 @Service
-public class UserDetailsServiceImpl implements UserDetailsService {
+public class UserDetailsServiceImpl implements UserDetailsService, UserDetailsPasswordService {
     @Autowired
     private UserRepository applicationUserRepository;
 
+    @Autowired
+    private UserCache userCache;
+
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        User user = applicationUserRepository.findByUsername(username);
+        UserSummary user = userCache.findByUsername(username)
+                .orElseThrow(() -> new UsernameNotFoundException(username));
+        return new org.springframework.security.core.userdetails.User(user.getUsername(), user.getPassword(), emptyList());
+    }
+
+    /**
+     * Stores a re-hashed password, called after a successful login when the stored hash
+     * was created with a lower BCrypt strength than the configured one.
+     */
+    @Override
+    public UserDetails updatePassword(UserDetails details, String newPassword) {
+        User user = applicationUserRepository.findByUsername(details.getUsername());
         if (user == null) {
-            throw new UsernameNotFoundException(username);
+            throw new UsernameNotFoundException(details.getUsername());
         }
-        return new org.springframework.security.core.userdetails.User(user.getUsername(), user.getPassword(), emptyList());
+        user.setPassword(newPassword);
+        applicationUserRepository.save(user);
+        userCache.invalidate(user.getUsername());
+        return new org.springframework.security.core.userdetails.User(user.getUsername(), newPassword, emptyList());
     }
 }
\ No newline at end of file
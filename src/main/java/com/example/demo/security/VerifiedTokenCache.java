@@ -0,0 +1,107 @@
+package com.example.demo.security;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.demo.security.SecurityConstants.SECRET;
+
+/**
+ * Remembers tokens that already passed signature verification, keyed by a SHA-256 hash
+ * of the token. Entries expire together with the token, so a cache hit never outlives
+ * the {@code exp} claim it was verified against.
+ */
+@Component
+public class VerifiedTokenCache implements MeterBinder {
+    private static final JWTVerifier VERIFIER = JWT.require(Algorithm.HMAC512(SECRET.getBytes())).build();
+
+    private final Cache<String, VerifiedToken> tokens;
+
+    public VerifiedTokenCache(@Value("${security.token-cache.maximum-size:10000}") long maximumSize) {
+        this.tokens = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new Expiry<String, VerifiedToken>() {
+                    @Override
+                    public long expireAfterCreate(String key, VerifiedToken token, long currentTime) {
+                        return TimeUnit.MILLISECONDS.toNanos(token.expiresAt - System.currentTimeMillis());
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, VerifiedToken token, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, VerifiedToken token, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the subject of the given token, verifying its signature and expiry only
+     * when it has not been seen before.
+     *
+     * @throws JWTVerificationException if the token is not valid
+     */
+    public String verify(String token) {
+        String key = hash(token);
+        VerifiedToken verified = tokens.getIfPresent(key);
+        if (verified != null) {
+            return verified.subject;
+        }
+
+        DecodedJWT decoded = VERIFIER.verify(token);
+        if (decoded.getSubject() != null && decoded.getExpiresAt() != null) {
+            tokens.put(key, new VerifiedToken(decoded.getSubject(), decoded.getExpiresAt().getTime()));
+        }
+        return decoded.getSubject();
+    }
+
+    public CacheStats stats() {
+        return tokens.stats();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, tokens, "security.verifiedTokens");
+    }
+
+    private static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class VerifiedToken {
+        private final String subject;
+        private final long expiresAt;
+
+        private VerifiedToken(String subject, long expiresAt) {
+            this.subject = subject;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.demo.security;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -12,26 +13,42 @@ import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import org.springframework.context.annotation.Bean;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static com.example.demo.security.SecurityConstants.ADMIN_ROLE;
+import static com.example.demo.security.SecurityConstants.ITEM_IMPORT_URL;
 import static com.example.demo.security.SecurityConstants.SIGN_UP_URL;
 
 @EnableWebSecurity
 public class WebSecurityConfiguration extends WebSecurityConfigurerAdapter {
     private UserDetailsServiceImpl userDetailsService;
     private BCryptPasswordEncoder bCryptPasswordEncoder;
+    private VerifiedTokenCache verifiedTokenCache;
+    private PasswordHashingExecutor passwordHashingExecutor;
+    private Set<String> adminUsers;
 
-    public WebSecurityConfiguration(UserDetailsServiceImpl userDetailsService, BCryptPasswordEncoder bCryptPasswordEncoder) {
+    public WebSecurityConfiguration(UserDetailsServiceImpl userDetailsService, BCryptPasswordEncoder bCryptPasswordEncoder,
+                                    VerifiedTokenCache verifiedTokenCache, PasswordHashingExecutor passwordHashingExecutor,
+                                    @Value("${security.admin-users:}") String[] adminUsers) {
         this.userDetailsService = userDetailsService;
         this.bCryptPasswordEncoder = bCryptPasswordEncoder;
+        this.verifiedTokenCache = verifiedTokenCache;
+        this.passwordHashingExecutor = passwordHashingExecutor;
+        this.adminUsers = new HashSet<>(Arrays.asList(adminUsers));
     }
 
     @Override
     protected void configure(HttpSecurity http) throws Exception {
         http.cors().and().csrf().disable().authorizeRequests()
                 .antMatchers(HttpMethod.POST, SIGN_UP_URL).permitAll()
+                // bulk upserts overwrite catalog names and prices
+                .antMatchers(HttpMethod.POST, ITEM_IMPORT_URL).hasRole(ADMIN_ROLE)
                 .anyRequest().authenticated()
                 .and()
-                .addFilter(new JWTAuthenticationFilter(authenticationManager()))
-                .addFilter(new JWTAuthenticationVerificationFilter(authenticationManager()))
+                .addFilter(new JWTAuthenticationFilter(authenticationManager(), passwordHashingExecutor))
+                .addFilter(new JWTAuthenticationVerificationFilter(authenticationManager(), verifiedTokenCache, adminUsers))
                 // this disables session creation on Spring Security
                 .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS);
     }
@@ -0,0 +1,101 @@
+package com.example.demo.server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.metrics.QueryCounter;
+
+/**
+ * Small fixed pool that runs the blocking repository work behind the {@code /api/async}
+ * endpoints. Request handlers hand their work here and return at once, so Tomcat's
+ * worker threads are only held for dispatch and the number of threads doing real work
+ * stays at {@code api.async.threads} however many connections are open. Once the pool
+ * and its queue are full, new work is rejected; {@link #respond(Supplier)} turns that
+ * into a 503 response.
+ */
+@Component
+@ConditionalOnProperty(name = "api.async.enabled", havingValue = "true")
+public class AsyncApiExecutor implements Executor, DisposableBean {
+
+	private static final Logger log = LoggerFactory.getLogger(AsyncApiExecutor.class);
+
+	private final ThreadPoolExecutor executor;
+
+	private final Executor propagating;
+
+	private final long retryAfterSeconds;
+
+	public AsyncApiExecutor(@Value("${api.async.threads:4}") int threads,
+			@Value("${api.async.queue-capacity:1000}") int queueCapacity,
+			@Value("${api.async.retry-after-seconds:1}") long retryAfterSeconds) {
+		this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueCapacity), new AsyncApiThreadFactory(),
+				new ThreadPoolExecutor.AbortPolicy());
+		this.propagating = QueryCounter.propagating(executor);
+		this.retryAfterSeconds = retryAfterSeconds;
+	}
+
+	/**
+	 * @throws RejectedExecutionException if the pool and its queue are full
+	 */
+	public <T> CompletableFuture<T> submit(Supplier<T> task) {
+		return CompletableFuture.supplyAsync(task, propagating);
+	}
+
+	/**
+	 * Runs a request handler on the pool. A saturated pool is answered with 503 and a
+	 * {@code Retry-After} header instead of an exception.
+	 */
+	public <T> CompletableFuture<ResponseEntity<T>> respond(Supplier<ResponseEntity<T>> handler) {
+		try {
+			return submit(handler);
+		} catch (RejectedExecutionException e) {
+			log.error("Async API pool is saturated");
+			return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+					.header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+					.build());
+		}
+	}
+
+	/**
+	 * @throws RejectedExecutionException if the pool and its queue are full
+	 */
+	@Override
+	public void execute(Runnable task) {
+		propagating.execute(task);
+	}
+
+	@Override
+	public void destroy() {
+		executor.shutdown();
+	}
+
+	private static class AsyncApiThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "async-api-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package com.example.demo.server;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.stereotype.Component;
+
+/**
+ * Chooses the threads Tomcat runs requests on, set with {@code server.request-execution}.
+ * <p>
+ * {@code platform} (the default) keeps Tomcat's own bounded worker pool. {@code virtual}
+ * runs every request on its own virtual thread, so requests blocked on JDBC or on the
+ * password hashing pool no longer hold a platform thread each. There is then no
+ * thread-count limit on concurrent requests any more; the Hikari pool
+ * ({@code spring.datasource.hikari.maximum-pool-size}) and the BCrypt pool are what
+ * cap concurrent work, and requests beyond that wait on them instead of in Tomcat's
+ * accept queue.
+ * <p>
+ * Virtual threads need Java 21 or later. They are looked up reflectively so the
+ * application still builds for Java 8; asking for {@code virtual} on an older runtime
+ * fails at startup rather than silently falling back.
+ * <p>
+ * Code on the request path must not block while holding a monitor, since that pins the
+ * virtual thread to its carrier until Java 24. The application's own locks are
+ * {@code java.util.concurrent} locks or guard memory-only work. Caffeine computes hold a
+ * {@code ConcurrentHashMap} bin monitor, so the caches in front of the database
+ * ({@code ItemCatalog}, {@code UserCache}, {@code CartWriteBehindStore}) run their
+ * queries outside of the cache and only store the result there. The embedded H2
+ * driver still synchronizes on its session for each statement, which pins for the
+ * length of the statement; a database reached over the network does not.
+ * Run with {@code -Djdk.tracePinnedThreads=short} to audit for new ones.
+ */
+@Component
+public class RequestExecutionCustomizer implements WebServerFactoryCustomizer<TomcatServletWebServerFactory> {
+
+	public enum Mode {
+		PLATFORM, VIRTUAL
+	}
+
+	private static final Logger log = LoggerFactory.getLogger(RequestExecutionCustomizer.class);
+
+	private static final String THREAD_NAME_PREFIX = "http-virtual-";
+
+	private final Mode mode;
+
+	public RequestExecutionCustomizer(@Value("${server.request-execution:platform}") Mode mode) {
+		this.mode = mode;
+	}
+
+	@Override
+	public void customize(TomcatServletWebServerFactory factory) {
+		if (mode != Mode.VIRTUAL) {
+			return;
+		}
+		ExecutorService executor = newVirtualThreadPerTaskExecutor();
+		factory.addConnectorCustomizers(connector -> connector.getProtocolHandler().setExecutor(executor));
+
+		log.info("Requests run on virtual threads");
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Equivalent of {@code Executors.newThreadPerTaskExecutor(Thread.ofVirtual()
+	 * .name(THREAD_NAME_PREFIX, 0).factory())}, written reflectively.
+	 */
+	static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderType.getMethod("name", String.class, long.class).invoke(builder, THREAD_NAME_PREFIX, 0L);
+			ThreadFactory threadFactory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+			Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			return (ExecutorService) newExecutor.invoke(null, threadFactory);
+		} catch (ClassNotFoundException | NoSuchMethodException e) {
+			throw new IllegalStateException("server.request-execution=virtual needs Java 21 or later, running on "
+					+ System.getProperty("java.version"), e);
+		} catch (IllegalAccessException | InvocationTargetException e) {
+			throw new IllegalStateException("Could not create the virtual thread executor", e);
+		}
+	}
+}
@@ -0,0 +1,14 @@
+package com.example.demo.services;
+
+/**
+ * Thrown by a {@link CartStorage} that can only hold a fixed number of lines per cart
+ * when a change would add more.
+ */
+public class CartCapacityExceededException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public CartCapacityExceededException(long cartId, int maxLines) {
+		super("Cart " + cartId + " can not hold more than " + maxLines + " different items");
+	}
+}
@@ -0,0 +1,292 @@
+package com.example.demo.services;
+
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.hibernate.exception.ConstraintViolationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.CartItem;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.CartItemRepository;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.responses.CartView;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Applies cart changes safely under concurrency. Each attempt runs in its own
+ * transaction and is retried a bounded number of times when it lost a race.
+ * <p>
+ * In {@link UpdateMode#OPTIMISTIC} mode the cart is loaded, changed and written back;
+ * the {@code @Version} column on {@link Cart} turns a concurrent write into a conflict.
+ * In {@link UpdateMode#DELTA} mode quantities and the total are adjusted in place with
+ * relative updates, so simultaneous adds merge without conflicting at all; only
+ * concurrent removals of the same line or inserts of the same new line can conflict.
+ * In {@link UpdateMode#WRITE_BEHIND} mode carts are changed in memory by the
+ * {@link CartWriteBehindStore} and written back in the background; checkout writes
+ * the cart before reading it.
+ * <p>
+ * This is the default {@link CartStorage}.
+ * <p>
+ * Conflicts are counted in {@code cart.update.conflicts}, updates that still failed
+ * after the last attempt in {@code cart.update.failures}.
+ * <p>
+ * Results are returned as {@link CartView}s built inside the transaction, so callers
+ * never see a detached cart with uninitialized lines.
+ */
+@Service
+@ConditionalOnProperty(name = "cart.storage", havingValue = "jpa", matchIfMissing = true)
+public class CartService implements CartStorage {
+
+	public enum UpdateMode {
+		OPTIMISTIC, DELTA, WRITE_BEHIND
+	}
+
+	private static final Logger log = LoggerFactory.getLogger(CartService.class);
+
+	private final CartRepository cartRepository;
+
+	private final CartItemRepository cartItemRepository;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final UpdateMode mode;
+
+	private final CartWriteBehindStore writeBehindStore;
+
+	private final int maxAttempts;
+
+	private final long backoffMillis;
+
+	private final Counter conflicts;
+
+	private final Counter failures;
+
+	public CartService(CartRepository cartRepository, CartItemRepository cartItemRepository,
+			PlatformTransactionManager transactionManager, MeterRegistry registry,
+			Optional<CartWriteBehindStore> writeBehindStore,
+			@Value("${cart.update.mode:OPTIMISTIC}") UpdateMode mode,
+			@Value("${cart.update.max-attempts:3}") int maxAttempts,
+			@Value("${cart.update.backoff-millis:10}") long backoffMillis) {
+		this.cartRepository = cartRepository;
+		this.cartItemRepository = cartItemRepository;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.mode = mode;
+		this.writeBehindStore = writeBehindStore.orElse(null);
+		if (mode == UpdateMode.WRITE_BEHIND && this.writeBehindStore == null) {
+			throw new IllegalStateException("cart.update.mode=WRITE_BEHIND needs a CartWriteBehindStore");
+		}
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.backoffMillis = backoffMillis;
+		this.conflicts = Counter.builder("cart.update.conflicts")
+				.description("Cart updates that lost a concurrent race and were retried or failed")
+				.tag("mode", mode.name().toLowerCase())
+				.register(registry);
+		this.failures = Counter.builder("cart.update.failures")
+				.description("Cart updates that still conflicted on the last attempt")
+				.tag("mode", mode.name().toLowerCase())
+				.register(registry);
+	}
+
+	@Override
+	public Optional<CartView> addItem(UserSummary user, Item item, int quantity) {
+		if (mode == UpdateMode.WRITE_BEHIND) {
+			return writeBehind(user, cart -> cart.addItem(item, quantity));
+		}
+		if (mode == UpdateMode.DELTA) {
+			return withRetry(() -> addDelta(user, item, quantity));
+		}
+		return withRetry(() -> update(user, cart -> cart.addItem(item, quantity)));
+	}
+
+	@Override
+	public Optional<CartView> removeItem(UserSummary user, Item item, int quantity) {
+		if (mode == UpdateMode.WRITE_BEHIND) {
+			return writeBehind(user, cart -> cart.removeItem(item, quantity));
+		}
+		if (mode == UpdateMode.DELTA) {
+			return withRetry(() -> removeDelta(user, item, quantity));
+		}
+		return withRetry(() -> update(user, cart -> cart.removeItem(item, quantity)));
+	}
+
+	/**
+	 * Loads the cart with all of its lines in one query, applies {@code changes} in
+	 * memory and writes the cart back once, under the version check and with the same
+	 * retries as single updates. Used for batches in both database modes.
+	 */
+	@Override
+	public Optional<CartView> applyAll(UserSummary user, Consumer<Cart> changes) {
+		if (mode == UpdateMode.WRITE_BEHIND) {
+			return writeBehind(user, changes);
+		}
+		return withRetry(() -> {
+			if (user.getCartId() == null) {
+				return Optional.empty();
+			}
+			Optional<Cart> cart = cartRepository.findWithItemsById(user.getCartId());
+			cart.ifPresent(c -> {
+				changes.accept(c);
+				cartRepository.saveAndFlush(c);
+			});
+			return cart;
+		});
+	}
+
+	/**
+	 * In {@link UpdateMode#WRITE_BEHIND} mode, brings the stored cart up to date with the
+	 * in-memory one inside the submitting transaction.
+	 */
+	@Override
+	public Optional<Cart> findForCheckout(UserSummary user) {
+		if (writeBehindStore == null || user.getCartId() == null) {
+			return findCart(user);
+		}
+		Optional<Cart> cart = cartRepository.findWithItemsById(user.getCartId());
+		cart.ifPresent(writeBehindStore::prepareCheckout);
+		return cart;
+	}
+
+	/**
+	 * Writes the emptied cart at once, so a concurrent change fails the version check
+	 * here rather than at commit. In {@link UpdateMode#WRITE_BEHIND} mode, the in-memory
+	 * copy is dropped or rebased once the emptied cart is committed.
+	 */
+	@Override
+	public void checkedOut(UserSummary user, Cart cart) {
+		if (writeBehindStore != null) {
+			writeBehindStore.checkedOut(cart);
+		}
+		cart.clear();
+		cartRepository.saveAndFlush(cart);
+	}
+
+	private Optional<CartView> writeBehind(UserSummary user, Consumer<Cart> change) {
+		if (user.getCartId() == null) {
+			return Optional.empty();
+		}
+		return writeBehindStore.update(user.getCartId(), change);
+	}
+
+	private Optional<CartView> withRetry(Supplier<Optional<Cart>> attempt) {
+		for (int i = 1;; i++) {
+			try {
+				return transactionTemplate.execute(status -> attempt.get().map(CartView::from));
+			} catch (ConcurrencyFailureException | DataIntegrityViolationException e) {
+				if (e instanceof DataIntegrityViolationException && !isDuplicateLine(e)) {
+					throw e;
+				}
+				conflicts.increment();
+				if (i >= maxAttempts) {
+					failures.increment();
+					log.warn("Cart update still conflicting after {} attempts", i);
+					throw e instanceof ConcurrencyFailureException
+							? (ConcurrencyFailureException) e
+							: new ConcurrencyFailureException("Concurrent insert of the same cart line", e);
+				}
+				backoff();
+			}
+		}
+	}
+
+	/**
+	 * Whether {@code e} is the unique constraint on (cart, item) rejecting a line that a
+	 * concurrent update inserted first; any other violation would fail again on retry.
+	 */
+	private static boolean isDuplicateLine(Throwable e) {
+		for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+			if (cause instanceof ConstraintViolationException) {
+				String constraint = ((ConstraintViolationException) cause).getConstraintName();
+				return constraint != null && constraint.toLowerCase(Locale.ROOT).contains(CartItem.UNIQUE_LINE);
+			}
+		}
+		return false;
+	}
+
+	private void backoff() {
+		if (backoffMillis <= 0) {
+			return;
+		}
+		try {
+			Thread.sleep(ThreadLocalRandom.current().nextLong(backoffMillis + 1));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private Optional<Cart> update(UserSummary user, Consumer<Cart> change) {
+		Optional<Cart> cart = findCart(user);
+		cart.ifPresent(c -> {
+			change.accept(c);
+			cartRepository.saveAndFlush(c);
+		});
+		return cart;
+	}
+
+	private Optional<Cart> addDelta(UserSummary user, Item item, int quantity) {
+		if (user.getCartId() == null) {
+			return Optional.empty();
+		}
+		long cartId = user.getCartId();
+		if (quantity > 0) {
+			Optional<CartItem> line = cartItemRepository.findByCartIdAndItemId(cartId, item.getId());
+			long unitPriceCents;
+			if (line.isPresent()) {
+				cartItemRepository.addQuantity(line.get().getId(), quantity);
+				unitPriceCents = line.get().getUnitPriceCents();
+			} else {
+				CartItem newLine = new CartItem(cartRepository.getOne(cartId), item);
+				newLine.setQuantity(quantity);
+				cartItemRepository.saveAndFlush(newLine);
+				unitPriceCents = newLine.getUnitPriceCents();
+			}
+			if (cartRepository.addToTotal(cartId, unitPriceCents * quantity) == 0) {
+				return Optional.empty();
+			}
+		}
+		return cartRepository.findWithItemsById(cartId);
+	}
+
+	private Optional<Cart> removeDelta(UserSummary user, Item item, int quantity) {
+		if (user.getCartId() == null) {
+			return Optional.empty();
+		}
+		long cartId = user.getCartId();
+		Optional<CartItem> line = cartItemRepository.findByCartIdAndItemId(cartId, item.getId());
+		if (line.isPresent() && quantity > 0) {
+			CartItem current = line.get();
+			int removed = Math.min(quantity, current.getQuantity());
+			int remaining = current.getQuantity() - removed;
+			if (cartItemRepository.compareAndSetQuantity(current.getId(), current.getQuantity(), remaining) == 0) {
+				throw new ObjectOptimisticLockingFailureException(CartItem.class, current.getId());
+			}
+			if (remaining == 0) {
+				cartItemRepository.deleteIfEmpty(current.getId());
+			}
+			cartRepository.addToTotal(cartId, -current.getUnitPriceCents() * removed);
+		}
+		return cartRepository.findWithItemsById(cartId);
+	}
+
+	private Optional<Cart> findCart(UserSummary user) {
+		if (user.getCartId() == null) {
+			return Optional.empty();
+		}
+		return cartRepository.findById(user.getCartId());
+	}
+}
@@ -0,0 +1,60 @@
+package com.example.demo.services;
+
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import org.springframework.dao.ConcurrencyFailureException;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.responses.CartView;
+
+/**
+ * Where cart contents live, chosen with {@code cart.storage}: {@code jpa} (the default,
+ * {@link CartService}) keeps them in the {@code cart} and {@code cart_item} tables,
+ * {@code off-heap} ({@link OffHeapCartStorage}) in direct memory outside the Java heap.
+ * Users and their cart ids always come from the database.
+ */
+public interface CartStorage {
+
+	/**
+	 * @return the updated cart, empty if the user has no cart
+	 * @throws ConcurrencyFailureException if the change kept conflicting with others
+	 * @throws CartCapacityExceededException if the cart would hold too many lines
+	 */
+	Optional<CartView> addItem(UserSummary user, Item item, int quantity);
+
+	/**
+	 * @return the updated cart, empty if the user has no cart
+	 * @throws ConcurrencyFailureException if the change kept conflicting with others
+	 */
+	Optional<CartView> removeItem(UserSummary user, Item item, int quantity);
+
+	/**
+	 * Applies {@code changes} to the cart as one update. {@code changes} may run more
+	 * than once and must only touch the cart it is given.
+	 *
+	 * @return the updated cart, empty if the user has no cart
+	 * @throws ConcurrencyFailureException if the change kept conflicting with others
+	 * @throws CartCapacityExceededException if the cart would hold too many lines
+	 */
+	Optional<CartView> applyAll(UserSummary user, Consumer<Cart> changes);
+
+	/**
+	 * Reads the cart with all of its lines to turn it into an order. Called inside the
+	 * submitting transaction.
+	 *
+	 * @return the cart, empty if the user has no cart
+	 */
+	Optional<Cart> findForCheckout(UserSummary user);
+
+	/**
+	 * Empties the cart returned by {@link #findForCheckout(UserSummary)} after its order
+	 * was built. Called inside the submitting transaction; if that rolls back the cart
+	 * must keep its contents.
+	 *
+	 * @throws ConcurrencyFailureException if the cart changed since it was read; thrown
+	 * right away, not at commit, so callers can rely on it before making the order final
+	 */
+	void checkedOut(UserSummary user, Cart cart);
+}
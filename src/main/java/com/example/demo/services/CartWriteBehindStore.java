@@ -0,0 +1,520 @@
+package com.example.demo.services;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.CartItem;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.responses.CartView;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Keeps hot carts in memory and writes them back in the background, used by
+ * {@link CartService} in {@link CartService.UpdateMode#WRITE_BEHIND} mode. A cart is
+ * loaded once with all of its lines and from then on changed in memory only; the
+ * in-memory copy is authoritative until it is flushed, so any number of edits between
+ * two flushes cost a single write.
+ * <p>
+ * Changed carts are written every {@code cart.write-behind.flush-interval-millis}, up
+ * to {@code cart.write-behind.batch-size} carts per transaction, and on shutdown. Carts are evicted
+ * after {@code cart.write-behind.idle-seconds} without use or when more than
+ * {@code cart.write-behind.maximum-size} are held; a cart with unwritten changes is
+ * kept in the pending set until it is written, and served from there if it is used
+ * again before that.
+ * <p>
+ * Every copy remembers the cart version it was loaded at. If the row was changed by
+ * anyone else in the meantime, for example by an order submission, the copy is
+ * discarded instead of overwriting that change, and counted in
+ * {@code cart.write-behind.conflicts}.
+ * <p>
+ * Checkout does not flush on its own: {@link #prepareCheckout(Cart)} copies the
+ * in-memory cart into the stored one inside the submitting transaction, so a submission
+ * needs a single connection. Until that transaction completes the copy is not written
+ * in the background. Edits made in the meantime are kept: after the commit the ordered
+ * lines are taken out of the copy and the rest is written on top of the emptied cart,
+ * counted in {@code cart.write-behind.checkout-races}.
+ */
+@Service
+@ConditionalOnProperty(name = "cart.update.mode", havingValue = "WRITE_BEHIND")
+public class CartWriteBehindStore implements DisposableBean {
+
+	private static final Logger log = LoggerFactory.getLogger(CartWriteBehindStore.class);
+
+	private final CartRepository cartRepository;
+
+	private final TransactionTemplate readTransaction;
+
+	private final TransactionTemplate writeTransaction;
+
+	private final Cache<Long, CachedCart> carts;
+
+	private final ConcurrentMap<Long, CachedCart> pending = new ConcurrentHashMap<>();
+
+	/** Serializes flushes, so that two writes of the same cart never race. */
+	private final ReentrantLock flushLock = new ReentrantLock();
+
+	private final ScheduledExecutorService flusher;
+
+	private final int batchSize;
+
+	private final Counter writes;
+
+	private final Counter conflicts;
+
+	private final Counter checkoutRaces;
+
+	public CartWriteBehindStore(CartRepository cartRepository, PlatformTransactionManager transactionManager,
+			MeterRegistry registry,
+			@Value("${cart.write-behind.maximum-size:10000}") long maximumSize,
+			@Value("${cart.write-behind.idle-seconds:600}") long idleSeconds,
+			@Value("${cart.write-behind.flush-interval-millis:1000}") long flushIntervalMillis,
+			@Value("${cart.write-behind.batch-size:100}") int batchSize) {
+		this.cartRepository = cartRepository;
+		this.readTransaction = new TransactionTemplate(transactionManager);
+		this.readTransaction.setReadOnly(true);
+		this.writeTransaction = new TransactionTemplate(transactionManager);
+		this.carts = Caffeine.newBuilder()
+				.maximumSize(maximumSize)
+				.expireAfterAccess(idleSeconds, TimeUnit.SECONDS)
+				.build();
+		this.batchSize = Math.max(1, batchSize);
+		this.writes = Counter.builder("cart.write-behind.writes")
+				.description("Carts written back to the database")
+				.register(registry);
+		this.conflicts = Counter.builder("cart.write-behind.conflicts")
+				.description("In-memory carts discarded because the stored cart changed underneath")
+				.register(registry);
+		this.checkoutRaces = Counter.builder("cart.write-behind.checkout-races")
+				.description("In-memory carts edited while their cart was being checked out")
+				.register(registry);
+		Gauge.builder("cart.write-behind.pending", pending, Map::size)
+				.description("Carts with changes not yet written")
+				.register(registry);
+		this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "cart-write-behind");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.flusher.scheduleWithFixedDelay(this::flushScheduled, flushIntervalMillis, flushIntervalMillis,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Applies {@code change} to the in-memory cart and schedules it to be written.
+	 *
+	 * @return the updated cart, empty if there is no cart with this id
+	 */
+	public Optional<CartView> update(long cartId, Consumer<Cart> change) {
+		for (;;) {
+			CachedCart entry = cachedOrLoaded(cartId);
+			if (entry == null) {
+				return Optional.empty();
+			}
+			entry.lock.lock();
+			try {
+				if (entry.discarded) {
+					// lost a race with discard(); load the stored cart again
+					continue;
+				}
+				change.accept(entry.cart);
+				entry.dirty = true;
+				pending.put(cartId, entry);
+				return Optional.of(CartView.from(entry.cart));
+			} finally {
+				entry.lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Makes {@code stored}, loaded with its lines in the caller's transaction, match the
+	 * in-memory copy. The changes are written with that transaction; until it completes
+	 * the copy is left out of background writes. A copy that is older than the stored
+	 * cart is discarded.
+	 */
+	public void prepareCheckout(Cart stored) {
+		CachedCart entry = entry(stored.getId());
+		if (entry == null) {
+			return;
+		}
+		boolean copied;
+		entry.lock.lock();
+		try {
+			if (entry.discarded || entry.checkingOut != null) {
+				return;
+			}
+			if (entry.version != stored.getVersion()) {
+				drop(entry, stored.getId());
+				return;
+			}
+			copied = entry.dirty;
+			if (copied) {
+				new Snapshot(entry).copyInto(stored);
+				entry.dirty = false;
+			}
+			entry.checkingOut = stored;
+		} finally {
+			entry.lock.unlock();
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCompletion(int status) {
+				checkoutCompleted(entry, stored, status == STATUS_COMMITTED, copied);
+			}
+		});
+	}
+
+	/**
+	 * Records the lines of a cart that is about to be emptied by a checkout prepared with
+	 * {@link #prepareCheckout(Cart)}, so that edits made during the checkout can be kept
+	 * without ordering these lines twice.
+	 */
+	public void checkedOut(Cart cart) {
+		CachedCart entry = entry(cart.getId());
+		if (entry == null) {
+			return;
+		}
+		Map<Item, Integer> ordered = new LinkedHashMap<>();
+		cart.getItems().forEach(line -> ordered.merge(line.getItem(), line.getQuantity(), Integer::sum));
+		entry.lock.lock();
+		try {
+			if (entry.checkingOut == cart) {
+				entry.ordered = ordered;
+			}
+		} finally {
+			entry.lock.unlock();
+		}
+	}
+
+	/**
+	 * Writes every cart with unwritten changes, in batches.
+	 */
+	public void flushAll() {
+		List<CachedCart> entries = new ArrayList<>(pending.values());
+		for (int from = 0; from < entries.size(); from += batchSize) {
+			write(entries.subList(from, Math.min(entries.size(), from + batchSize)));
+		}
+	}
+
+	private void checkoutCompleted(CachedCart entry, Cart stored, boolean committed, boolean copied) {
+		entry.lock.lock();
+		try {
+			entry.checkingOut = null;
+			Map<Item, Integer> ordered = entry.ordered;
+			entry.ordered = null;
+			if (!committed) {
+				// nothing was written; the copy is as unwritten as before
+				entry.dirty |= copied;
+				return;
+			}
+			entry.version = stored.getVersion();
+			if (ordered == null) {
+				return;
+			}
+			if (!entry.dirty) {
+				entry.discarded = true;
+				pending.remove(stored.getId(), entry);
+				carts.asMap().remove(stored.getId(), entry);
+				return;
+			}
+			ordered.forEach(entry.cart::removeItem);
+			checkoutRaces.increment();
+			log.info("Kept edits made to cart {} while it was checked out", stored.getId());
+		} finally {
+			entry.lock.unlock();
+		}
+	}
+
+	private CachedCart entry(long cartId) {
+		CachedCart entry = pending.get(cartId);
+		return entry != null ? entry : carts.getIfPresent(cartId);
+	}
+
+	@Override
+	public void destroy() throws InterruptedException {
+		flusher.shutdown();
+		flusher.awaitTermination(10, TimeUnit.SECONDS);
+		int count = pending.size();
+		flushAll();
+		log.info("Flushed {} carts on shutdown", count);
+	}
+
+	/**
+	 * Loads a missing cart outside of the cache, as {@code Cache.get(key, loader)} would
+	 * hold a map bin monitor during the query; the first copy stored wins.
+	 */
+	private CachedCart cachedOrLoaded(long cartId) {
+		CachedCart entry = carts.getIfPresent(cartId);
+		if (entry != null) {
+			return entry;
+		}
+		CachedCart loaded = load(cartId);
+		if (loaded == null) {
+			return null;
+		}
+		CachedCart winner = carts.asMap().putIfAbsent(cartId, loaded);
+		return winner != null ? winner : loaded;
+	}
+
+	private CachedCart load(Long cartId) {
+		CachedCart unwritten = pending.get(cartId);
+		if (unwritten != null) {
+			return unwritten;
+		}
+		return readTransaction.execute(status -> cartRepository.findWithItemsById(cartId)
+				.map(CachedCart::new)
+				.orElse(null));
+	}
+
+	private void flushScheduled() {
+		try {
+			flushAll();
+		} catch (RuntimeException e) {
+			log.error("Writing carts failed, retrying with the next flush", e);
+		}
+	}
+
+	private void write(List<CachedCart> entries) {
+		List<Snapshot> snapshots = new ArrayList<>(entries.size());
+		flushLock.lock();
+		try {
+			for (CachedCart entry : entries) {
+				Snapshot snapshot = entry.snapshot();
+				if (snapshot != null) {
+					snapshots.add(snapshot);
+				}
+			}
+			if (snapshots.isEmpty()) {
+				return;
+			}
+			try {
+				writeTransaction.execute(status -> apply(snapshots));
+			} catch (ConcurrencyFailureException e) {
+				// a cart changed between its version check and the commit; find out which
+				for (Snapshot snapshot : snapshots) {
+					writeAlone(snapshot);
+				}
+			} catch (RuntimeException e) {
+				snapshots.forEach(Snapshot::failed);
+				throw e;
+			}
+			snapshots.forEach(this::settle);
+		} finally {
+			flushLock.unlock();
+		}
+	}
+
+	private void writeAlone(Snapshot snapshot) {
+		try {
+			writeTransaction.execute(status -> apply(Collections.singletonList(snapshot)));
+		} catch (ConcurrencyFailureException e) {
+			snapshot.conflict = true;
+		} catch (RuntimeException e) {
+			log.error("Writing cart {} failed, retrying with the next flush", snapshot.cartId, e);
+			snapshot.failed();
+		}
+	}
+
+	private Void apply(List<Snapshot> snapshots) {
+		Map<Long, Snapshot> byId = new HashMap<>();
+		snapshots.forEach(snapshot -> {
+			snapshot.conflict = true;
+			byId.put(snapshot.cartId, snapshot);
+		});
+		List<Cart> stored = cartRepository.findWithItemsByIdIn(byId.keySet());
+		for (Cart cart : stored) {
+			Snapshot snapshot = byId.get(cart.getId());
+			if (cart.getVersion() != snapshot.version) {
+				continue;
+			}
+			snapshot.copyInto(cart);
+			snapshot.conflict = false;
+		}
+		cartRepository.saveAll(stored);
+		cartRepository.flush();
+		for (Cart cart : stored) {
+			byId.get(cart.getId()).writtenVersion = cart.getVersion();
+		}
+		return null;
+	}
+
+	private void settle(Snapshot snapshot) {
+		if (snapshot.failed) {
+			return;
+		}
+		CachedCart entry = snapshot.entry;
+		entry.lock.lock();
+		try {
+			if (snapshot.conflict) {
+				drop(entry, snapshot.cartId);
+				return;
+			}
+			entry.version = snapshot.writtenVersion;
+			if (!entry.dirty) {
+				pending.remove(snapshot.cartId, entry);
+			}
+			writes.increment();
+		} finally {
+			entry.lock.unlock();
+		}
+	}
+
+	/**
+	 * Called with the entry's lock held.
+	 */
+	private void drop(CachedCart entry, long cartId) {
+		entry.discarded = true;
+		pending.remove(cartId, entry);
+		carts.asMap().remove(cartId, entry);
+		conflicts.increment();
+		log.warn("Discarded in-memory cart {} because the stored cart changed", cartId);
+	}
+
+	/**
+	 * A detached cart with all of its lines, guarded by its own lock.
+	 */
+	private static final class CachedCart {
+
+		final ReentrantLock lock = new ReentrantLock();
+
+		final Cart cart;
+
+		/** Version of the stored cart this copy is based on. */
+		long version;
+
+		boolean dirty;
+
+		boolean discarded;
+
+		/** The stored cart of the submitting transaction that holds this copy's contents. */
+		Cart checkingOut;
+
+		/** Lines taken by the checkout in progress, once it emptied the cart. */
+		Map<Item, Integer> ordered;
+
+		CachedCart(Cart cart) {
+			this.cart = cart;
+			this.version = cart.getVersion();
+			if (cart.getItems() == null) {
+				cart.setItems(new ArrayList<>());
+			}
+		}
+
+		/**
+		 * Copies the current state for writing and marks the cart clean; changes made
+		 * while the write is in flight mark it dirty again.
+		 */
+		Snapshot snapshot() {
+			lock.lock();
+			try {
+				if (!dirty || discarded || checkingOut != null) {
+					return null;
+				}
+				dirty = false;
+				return new Snapshot(this);
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	private static final class Snapshot {
+
+		final CachedCart entry;
+
+		final long cartId;
+
+		final long version;
+
+		final long totalCents;
+
+		final List<Item> items = new ArrayList<>();
+
+		final List<Integer> quantities = new ArrayList<>();
+
+		final List<BigDecimal> unitPrices = new ArrayList<>();
+
+		boolean conflict;
+
+		boolean failed;
+
+		long writtenVersion;
+
+		Snapshot(CachedCart entry) {
+			this.entry = entry;
+			this.cartId = entry.cart.getId();
+			this.version = entry.version;
+			this.totalCents = entry.cart.getTotalCents();
+			for (CartItem line : entry.cart.getItems()) {
+				items.add(line.getItem());
+				quantities.add(line.getQuantity());
+				unitPrices.add(line.getUnitPrice());
+			}
+		}
+
+		/**
+		 * Makes the stored cart match this snapshot, reusing existing lines by item so
+		 * that unchanged lines are not written at all.
+		 */
+		void copyInto(Cart cart) {
+			if (cart.getItems() == null) {
+				cart.setItems(new ArrayList<>());
+			}
+			Map<Long, CartItem> stored = new HashMap<>();
+			cart.getItems().forEach(line -> stored.put(line.getItem().getId(), line));
+			for (int i = 0; i < items.size(); i++) {
+				CartItem line = stored.remove(items.get(i).getId());
+				if (line == null) {
+					line = new CartItem(cart, items.get(i));
+					cart.getItems().add(line);
+				}
+				line.setQuantity(quantities.get(i));
+				line.setUnitPrice(unitPrices.get(i));
+			}
+			cart.getItems().removeAll(stored.values());
+			cart.setTotal(BigDecimal.valueOf(totalCents, 2));
+		}
+
+		void failed() {
+			failed = true;
+			entry.lock.lock();
+			try {
+				entry.dirty = true;
+			} finally {
+				entry.lock.unlock();
+			}
+		}
+	}
+}
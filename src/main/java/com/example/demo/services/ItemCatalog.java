@@ -0,0 +1,166 @@
+package com.example.demo.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.responses.ItemPage;
+import com.example.demo.model.responses.ItemView;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Read-through cache in front of {@link ItemRepository}. Cache hits are served from
+ * memory without opening a Hibernate session; every write has to go through
+ * {@link #save(Item)}, {@link #saveAll(List)} or be followed by {@link #invalidate()}
+ * so that the caches and the {@link ItemSearchIndex} stay current.
+ */
+@Service
+public class ItemCatalog implements MeterBinder {
+
+	private static final String ALL_ITEMS = "all";
+
+	private final ItemRepository itemRepository;
+
+	private final ItemSearchIndex searchIndex;
+
+	private final ReadThroughCache<Long, Optional<Item>> itemsById;
+
+	private final ReadThroughCache<String, List<Item>> itemsByName;
+
+	private final ReadThroughCache<String, List<Item>> allItems;
+
+	public ItemCatalog(ItemRepository itemRepository, ItemSearchIndex searchIndex,
+			@Value("${catalog.cache.maximum-size:10000}") long maximumSize,
+			@Value("${catalog.cache.ttl-seconds:600}") long ttlSeconds) {
+		this.itemRepository = itemRepository;
+		this.searchIndex = searchIndex;
+		this.itemsById = new ReadThroughCache<>(Caffeine.newBuilder()
+				.maximumSize(maximumSize)
+				.expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+				.recordStats()
+				.build(), itemRepository::findById);
+		this.itemsByName = new ReadThroughCache<>(Caffeine.newBuilder()
+				.maximumSize(maximumSize)
+				.expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+				.recordStats()
+				.build(), name -> Collections.unmodifiableList(itemRepository.findByName(name)));
+		this.allItems = new ReadThroughCache<>(Caffeine.newBuilder()
+				.maximumSize(1)
+				.expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+				.recordStats()
+				.build(), key -> Collections.unmodifiableList(itemRepository.findAll()));
+	}
+
+	public List<Item> findAll() {
+		return allItems.get(ALL_ITEMS);
+	}
+
+	public Optional<Item> findById(Long id) {
+		return itemsById.get(id);
+	}
+
+	public List<Item> findByName(String name) {
+		return itemsByName.get(name);
+	}
+
+	public List<Item> search(String query, int limit) {
+		return searchIndex.search(query, limit);
+	}
+
+	/**
+	 * Keyset page of items ordered by id, starting after {@code cursor}. Pages are
+	 * not cached; each one is a single indexed range scan.
+	 */
+	public ItemPage findPage(long cursor, int size) {
+		List<ItemView> items = new ArrayList<>();
+		itemRepository.findByIdGreaterThanOrderByIdAsc(cursor, PageRequest.of(0, size + 1))
+				.forEach(item -> items.add(ItemView.from(item)));
+		if (items.size() <= size) {
+			return new ItemPage(items, null);
+		}
+		List<ItemView> page = items.subList(0, size);
+		return new ItemPage(page, page.get(size - 1).getId());
+	}
+
+	public Item save(Item item) {
+		Item saved = itemRepository.save(item);
+		itemsById.invalidateAll();
+		itemsByName.invalidateAll();
+		allItems.invalidateAll();
+		searchIndex.index(saved);
+		return saved;
+	}
+
+	/**
+	 * Saves a batch of items and indexes just those, instead of rebuilding the whole
+	 * search index. Meant for bulk writes inside a caller's transaction: the caches are
+	 * only cleared and the items only indexed once it commits, so a concurrent read
+	 * cannot cache the old rows for the full TTL and a rolled-back batch leaves the
+	 * index untouched.
+	 */
+	public List<Item> saveAll(List<Item> items) {
+		List<Item> saved = itemRepository.saveAll(items);
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			published(saved);
+			return saved;
+		}
+		List<Item> written = new ArrayList<>(saved);
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCommit() {
+				published(written);
+			}
+		});
+		return saved;
+	}
+
+	/**
+	 * Drops every cached entry and rebuilds the search index. Needed after any write
+	 * that bypasses {@link #save(Item)}.
+	 */
+	public void invalidate() {
+		itemsById.invalidateAll();
+		itemsByName.invalidateAll();
+		allItems.invalidateAll();
+		searchIndex.rebuild();
+	}
+
+	private void published(List<Item> saved) {
+		itemsById.invalidateAll();
+		itemsByName.invalidateAll();
+		allItems.invalidateAll();
+		saved.forEach(searchIndex::index);
+	}
+
+	public Map<String, CacheStats> stats() {
+		Map<String, CacheStats> stats = new LinkedHashMap<>();
+		stats.put("items.byId", itemsById.stats());
+		stats.put("items.byName", itemsByName.stats());
+		stats.put("items.all", allItems.stats());
+		return stats;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		CaffeineCacheMetrics.monitor(registry, itemsById.cache(), "items.byId");
+		CaffeineCacheMetrics.monitor(registry, itemsByName.cache(), "items.byName");
+		CaffeineCacheMetrics.monitor(registry, allItems.cache(), "items.all");
+	}
+}
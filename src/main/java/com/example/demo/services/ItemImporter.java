@@ -0,0 +1,330 @@
+package com.example.demo.services;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.persistence.EntityManager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.responses.ImportReport;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Streams items from CSV or newline-delimited JSON into the catalog. Rows are read
+ * one at a time, validated and upserted by name in chunks of
+ * {@code catalog.import.batch-size}, each chunk in its own transaction; the
+ * persistence context is cleared after every chunk, so memory use does not depend on
+ * the size of the input. Invalid rows are skipped and reported. Chunks are written
+ * through {@link ItemCatalog#saveAll(List)}, which drops the item caches and indexes
+ * only the written rows, so the import never reloads the whole catalog. Imports run
+ * one at a time, since two concurrent imports of the same new name would both insert it.
+ * <p>
+ * CSV input needs a header row naming the {@code name}, {@code price} and
+ * {@code description} columns, in any order; NDJSON input has one object with the same
+ * fields per line.
+ */
+@Service
+public class ItemImporter {
+
+	public enum Format {
+		CSV, NDJSON
+	}
+
+	private static final Logger log = LoggerFactory.getLogger(ItemImporter.class);
+
+	private static final int MAX_TEXT_LENGTH = 255;
+
+	private static final int PROGRESS_INTERVAL = 10_000;
+
+	private final ItemRepository itemRepository;
+
+	private final ItemCatalog itemCatalog;
+
+	private final EntityManager entityManager;
+
+	private final ObjectMapper objectMapper;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final int batchSize;
+
+	private final int maxReportedRejections;
+
+	/**
+	 * Held for a whole import, across request body reads and JDBC calls; a
+	 * {@code ReentrantLock} rather than a monitor so virtual threads can park on it.
+	 */
+	private final ReentrantLock importLock = new ReentrantLock();
+
+	public ItemImporter(ItemRepository itemRepository, ItemCatalog itemCatalog, EntityManager entityManager,
+			ObjectMapper objectMapper, PlatformTransactionManager transactionManager,
+			@Value("${catalog.import.batch-size:500}") int batchSize,
+			@Value("${catalog.import.max-reported-rejections:100}") int maxReportedRejections) {
+		this.itemRepository = itemRepository;
+		this.itemCatalog = itemCatalog;
+		this.entityManager = entityManager;
+		this.objectMapper = objectMapper;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.batchSize = batchSize;
+		this.maxReportedRejections = maxReportedRejections;
+	}
+
+	public ImportReport importItems(InputStream in, Format format) throws IOException {
+		Run run = new Run();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		importLock.lock();
+		try {
+			if (format == Format.CSV) {
+				readCsv(reader, run);
+			} else {
+				readNdjson(reader, run);
+			}
+			run.flush();
+		} finally {
+			importLock.unlock();
+		}
+
+		log.info("Item import finished: {} rows, {} inserted, {} updated, {} rejected", run.processed, run.inserted,
+				run.updated, run.rejected);
+		return new ImportReport(run.processed, run.inserted, run.updated, run.rejected, run.rejections);
+	}
+
+	private void readCsv(BufferedReader reader, Run run) throws IOException {
+		long[] lineNumber = { 0 };
+		List<String> header = readCsvRecord(reader, lineNumber);
+		if (header == null) {
+			return;
+		}
+		Map<String, Integer> columns = new HashMap<>();
+		for (int i = 0; i < header.size(); i++) {
+			columns.put(header.get(i).trim().toLowerCase(Locale.ROOT), i);
+		}
+		Integer name = columns.get("name");
+		Integer price = columns.get("price");
+		Integer description = columns.get("description");
+		if (name == null || price == null || description == null) {
+			run.reject(1, "Header must name the name, price and description columns");
+			return;
+		}
+
+		List<String> record;
+		long line = lineNumber[0] + 1;
+		while ((record = readCsvRecord(reader, lineNumber)) != null) {
+			if (!(record.size() == 1 && record.get(0).isEmpty())) {
+				run.accept(line, column(record, name), column(record, price), column(record, description));
+			}
+			line = lineNumber[0] + 1;
+		}
+	}
+
+	private void readNdjson(BufferedReader reader, Run run) throws IOException {
+		String text;
+		long line = 0;
+		while ((text = reader.readLine()) != null) {
+			line++;
+			if (text.trim().isEmpty()) {
+				continue;
+			}
+			JsonNode node;
+			try {
+				node = objectMapper.readTree(text);
+			} catch (IOException e) {
+				run.reject(line, "Malformed JSON");
+				continue;
+			}
+			if (!node.isObject()) {
+				run.reject(line, "Expected a JSON object");
+				continue;
+			}
+			run.accept(line, text(node, "name"), text(node, "price"), text(node, "description"));
+		}
+	}
+
+	private static String text(JsonNode node, String field) {
+		JsonNode value = node.get(field);
+		return value == null || value.isNull() ? null : value.asText();
+	}
+
+	private static String column(List<String> record, Integer index) {
+		return index == null || index >= record.size() ? null : record.get(index);
+	}
+
+	/**
+	 * Reads one RFC 4180 record: fields separated by commas, optionally enclosed in
+	 * double quotes, with {@code ""} for a literal quote. Quoted fields may span lines.
+	 *
+	 * @return the fields, or {@code null} at the end of the input
+	 */
+	private static List<String> readCsvRecord(BufferedReader reader, long[] lineNumber) throws IOException {
+		String line = reader.readLine();
+		if (line == null) {
+			return null;
+		}
+		lineNumber[0]++;
+		List<String> fields = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		int i = 0;
+		while (true) {
+			if (i == line.length()) {
+				if (!quoted) {
+					break;
+				}
+				line = reader.readLine();
+				if (line == null) {
+					break;
+				}
+				lineNumber[0]++;
+				field.append('\n');
+				i = 0;
+				continue;
+			}
+			char c = line.charAt(i++);
+			if (quoted) {
+				if (c == '"' && i < line.length() && line.charAt(i) == '"') {
+					field.append('"');
+					i++;
+				} else if (c == '"') {
+					quoted = false;
+				} else {
+					field.append(c);
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+		fields.add(field.toString());
+		return fields;
+	}
+
+	/**
+	 * State of one import: counters, reported rejections and the chunk of valid rows
+	 * waiting to be written. Rows with the same name within a chunk collapse into the
+	 * last one.
+	 */
+	private final class Run {
+
+		private final Map<String, Item> chunk = new LinkedHashMap<>();
+
+		private final List<ImportReport.Rejection> rejections = new ArrayList<>();
+
+		private long processed;
+
+		private long inserted;
+
+		private long updated;
+
+		private long rejected;
+
+		void accept(long line, String name, String price, String description) {
+			processed++;
+			String error = validate(name, price, description);
+			if (error != null) {
+				reject(line, error);
+				return;
+			}
+			Item item = new Item();
+			item.setName(name.trim());
+			item.setPrice(new BigDecimal(price.trim()));
+			item.setDescription(description.trim());
+			chunk.put(item.getName(), item);
+			if (chunk.size() >= batchSize) {
+				flush();
+			}
+			if (processed % PROGRESS_INTERVAL == 0) {
+				log.info("Item import progress: {} rows, {} rejected", processed, rejected);
+			}
+		}
+
+		void reject(long line, String reason) {
+			rejected++;
+			if (rejections.size() < maxReportedRejections) {
+				rejections.add(new ImportReport.Rejection(line, reason));
+			}
+		}
+
+		void flush() {
+			if (chunk.isEmpty()) {
+				return;
+			}
+			transactionTemplate.execute(status -> {
+				List<Item> writes = new ArrayList<>(chunk.size());
+				for (Item existing : itemRepository.findByNameIn(chunk.keySet())) {
+					Item row = chunk.get(existing.getName());
+					existing.setPrice(row.getPrice());
+					existing.setDescription(row.getDescription());
+					row.setId(existing.getId());
+					writes.add(existing);
+					updated++;
+				}
+				for (Item row : chunk.values()) {
+					if (row.getId() == null) {
+						writes.add(row);
+						inserted++;
+					}
+				}
+				itemCatalog.saveAll(writes);
+				entityManager.flush();
+				entityManager.clear();
+				return null;
+			});
+			chunk.clear();
+		}
+	}
+
+	private static String validate(String name, String price, String description) {
+		if (name == null || name.trim().isEmpty()) {
+			return "Missing name";
+		}
+		if (name.trim().length() > MAX_TEXT_LENGTH) {
+			return "Name is longer than " + MAX_TEXT_LENGTH + " characters";
+		}
+		if (description == null || description.trim().isEmpty()) {
+			return "Missing description";
+		}
+		if (description.trim().length() > MAX_TEXT_LENGTH) {
+			return "Description is longer than " + MAX_TEXT_LENGTH + " characters";
+		}
+		if (price == null || price.trim().isEmpty()) {
+			return "Missing price";
+		}
+		BigDecimal amount;
+		try {
+			amount = new BigDecimal(price.trim());
+		} catch (NumberFormatException e) {
+			return "Price is not a number: " + price;
+		}
+		if (amount.signum() < 0) {
+			return "Price is negative";
+		}
+		if (amount.stripTrailingZeros().scale() > 2) {
+			return "Price has more than two decimals";
+		}
+		return null;
+	}
+}
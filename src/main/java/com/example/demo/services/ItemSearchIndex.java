@@ -0,0 +1,215 @@
+package com.example.demo.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+
+/**
+ * In-memory inverted index over item names and descriptions. Every query token has to
+ * match an indexed token; the last one is matched as a prefix so the same lookup
+ * serves typeahead. Items whose name matches rank above description-only matches.
+ */
+@Service
+public class ItemSearchIndex {
+
+	private static final Logger log = LoggerFactory.getLogger(ItemSearchIndex.class);
+
+	private final ItemRepository itemRepository;
+
+	private volatile Snapshot snapshot = new Snapshot();
+
+	/**
+	 * Single-item changes made while at least one rebuild is running, replayed onto each
+	 * rebuilt snapshot before it is swapped in. Guarded by the monitor.
+	 */
+	private final List<Consumer<Snapshot>> changesDuringRebuild = new ArrayList<>();
+
+	private int rebuilding;
+
+	public ItemSearchIndex(ItemRepository itemRepository) {
+		this.itemRepository = itemRepository;
+	}
+
+	/**
+	 * Reloads every item into new maps and then swaps them in, so a search sees either
+	 * the old or the new index and never a half-built one. The query and the build run
+	 * before the monitor is taken; it is only held to replay the items indexed or
+	 * removed in the meantime, which the query may have missed, and for the swap.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void rebuild() {
+		int from;
+		synchronized (this) {
+			rebuilding++;
+			from = changesDuringRebuild.size();
+		}
+		try {
+			List<Item> all = itemRepository.findAll();
+			Snapshot rebuilt = new Snapshot();
+			all.forEach(rebuilt::add);
+			synchronized (this) {
+				changesDuringRebuild.subList(from, changesDuringRebuild.size()).forEach(change -> change.accept(rebuilt));
+				snapshot = rebuilt;
+			}
+
+			log.info("Search index built with {} items", all.size());
+		} finally {
+			synchronized (this) {
+				if (--rebuilding == 0) {
+					changesDuringRebuild.clear();
+				}
+			}
+		}
+	}
+
+	public synchronized void index(Item item) {
+		if (item.getId() == null) {
+			return;
+		}
+		apply(index -> {
+			index.remove(item.getId());
+			index.add(item);
+		});
+	}
+
+	public synchronized void remove(Long id) {
+		apply(index -> index.remove(id));
+	}
+
+	private void apply(Consumer<Snapshot> change) {
+		change.accept(snapshot);
+		if (rebuilding > 0) {
+			changesDuringRebuild.add(change);
+		}
+	}
+
+	public List<Item> search(String query, int limit) {
+		List<String> terms = tokenize(query);
+		if (terms.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		Snapshot index = snapshot;
+		Map<Long, Integer> nameHits = new HashMap<>();
+		Set<Long> matches = null;
+		for (int i = 0; i < terms.size(); i++) {
+			boolean prefix = i == terms.size() - 1;
+			Set<Long> inName = lookup(index.nameTokens, terms.get(i), prefix);
+			Set<Long> termMatches = new LinkedHashSet<>(inName);
+			termMatches.addAll(lookup(index.descriptionTokens, terms.get(i), prefix));
+			if (matches == null) {
+				matches = termMatches;
+			} else {
+				matches.retainAll(termMatches);
+			}
+			if (matches.isEmpty()) {
+				return Collections.emptyList();
+			}
+			inName.forEach(id -> nameHits.merge(id, 1, Integer::sum));
+		}
+
+		List<Long> ranked = new ArrayList<>(matches);
+		ranked.sort(Comparator.<Long>comparingInt(id -> -nameHits.getOrDefault(id, 0))
+				.thenComparing(Comparator.naturalOrder()));
+
+		List<Item> result = new ArrayList<>(Math.min(limit, ranked.size()));
+		for (Long id : ranked) {
+			Item item = index.items.get(id);
+			if (item != null) {
+				result.add(item);
+			}
+			if (result.size() == limit) {
+				break;
+			}
+		}
+		return result;
+	}
+
+	private static void unlink(Map<String, Set<Long>> tokens, String token, Long id) {
+		Set<Long> ids = tokens.get(token);
+		if (ids != null) {
+			ids.remove(id);
+			if (ids.isEmpty()) {
+				tokens.remove(token);
+			}
+		}
+	}
+
+	private static Set<Long> lookup(NavigableMap<String, Set<Long>> tokens, String term, boolean prefix) {
+		if (!prefix) {
+			return tokens.getOrDefault(term, Collections.emptySet());
+		}
+		Set<Long> ids = new LinkedHashSet<>();
+		tokens.subMap(term, true, term + Character.MAX_VALUE, false).values().forEach(ids::addAll);
+		return ids;
+	}
+
+	private static List<String> tokenize(String text) {
+		if (text == null) {
+			return Collections.emptyList();
+		}
+		List<String> tokens = new ArrayList<>();
+		for (String token : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+			if (!token.isEmpty()) {
+				tokens.add(token);
+			}
+		}
+		return tokens;
+	}
+
+	/**
+	 * The maps of one build. {@link ItemSearchIndex#rebuild()} replaces it as a whole;
+	 * single items are indexed and removed in place under the monitor, which the
+	 * concurrent maps allow while searches read them.
+	 */
+	private static final class Snapshot {
+
+		final ConcurrentSkipListMap<String, Set<Long>> nameTokens = new ConcurrentSkipListMap<>();
+
+		final ConcurrentSkipListMap<String, Set<Long>> descriptionTokens = new ConcurrentSkipListMap<>();
+
+		final Map<Long, Item> items = new ConcurrentHashMap<>();
+
+		void add(Item item) {
+			items.put(item.getId(), item);
+			for (String token : tokenize(item.getName())) {
+				nameTokens.computeIfAbsent(token, t -> ConcurrentHashMap.newKeySet()).add(item.getId());
+			}
+			for (String token : tokenize(item.getDescription())) {
+				descriptionTokens.computeIfAbsent(token, t -> ConcurrentHashMap.newKeySet()).add(item.getId());
+			}
+		}
+
+		void remove(Long id) {
+			Item previous = items.remove(id);
+			if (previous == null) {
+				return;
+			}
+			for (String token : tokenize(previous.getName())) {
+				unlink(nameTokens, token, id);
+			}
+			for (String token : tokenize(previous.getDescription())) {
+				unlink(descriptionTokens, token, id);
+			}
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package com.example.demo.services;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.responses.ItemView;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Writes the whole catalog as a JSON array straight from a database cursor. Every
+ * item is detached once written, so memory use does not grow with the catalog size.
+ */
+@Service
+public class ItemStreamer {
+
+	private static final int FLUSH_INTERVAL = 500;
+
+	@Autowired
+	private ItemRepository itemRepository;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Transactional(readOnly = true)
+	public long writeAll(OutputStream out) throws IOException {
+		long count = 0;
+		try (Stream<Item> items = itemRepository.streamAll();
+				JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+			json.writeStartArray();
+			Iterator<Item> iterator = items.iterator();
+			while (iterator.hasNext()) {
+				Item item = iterator.next();
+				json.writeObject(ItemView.from(item));
+				entityManager.detach(item);
+				if (++count % FLUSH_INTERVAL == 0) {
+					json.flush();
+				}
+			}
+			json.writeEndArray();
+		}
+		return count;
+	}
+}
@@ -0,0 +1,179 @@
+package com.example.demo.services;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.demo.model.responses.ItemPage;
+import com.example.demo.model.responses.ItemView;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Writes the whole catalog as a JSON array with servlet non-blocking I/O. Items are read
+ * one keyset page at a time on the given executor, and the next page is only requested
+ * once the previous one has been handed to the connection. A slow client therefore
+ * holds at most one serialized page in memory and no thread ever waits on its socket;
+ * when the socket cannot take more, the container calls back once it can.
+ * <p>
+ * All state changes are guarded by this object's monitor, which only covers
+ * non-blocking writes and never database work.
+ */
+public class NonBlockingItemWriter implements WriteListener, AsyncListener {
+
+	private static final Logger log = LoggerFactory.getLogger(NonBlockingItemWriter.class);
+
+	private final ItemCatalog itemCatalog;
+
+	private final ObjectMapper objectMapper;
+
+	private final Executor executor;
+
+	private final int pageSize;
+
+	private AsyncContext context;
+
+	private ServletOutputStream out;
+
+	private byte[] pending = { '[' };
+
+	private long cursor;
+
+	private long count;
+
+	private boolean fetching;
+
+	private boolean exhausted;
+
+	private boolean done;
+
+	public NonBlockingItemWriter(ItemCatalog itemCatalog, ObjectMapper objectMapper, Executor executor, int pageSize) {
+		this.itemCatalog = itemCatalog;
+		this.objectMapper = objectMapper;
+		this.executor = executor;
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * Registers for write callbacks on an already started async request. The container
+	 * makes the first {@link #onWritePossible()} call.
+	 */
+	public void start(AsyncContext context) throws IOException {
+		this.context = context;
+		this.out = context.getResponse().getOutputStream();
+		context.addListener(this);
+		out.setWriteListener(this);
+	}
+
+	@Override
+	public synchronized void onWritePossible() throws IOException {
+		while (!done && out.isReady()) {
+			if (pending != null) {
+				byte[] chunk = pending;
+				pending = null;
+				out.write(chunk);
+				fetchNext();
+			} else if (exhausted) {
+				out.write(']');
+				log.info("Streamed {} items", count);
+				finish();
+			} else {
+				// the next page is still being read; onPage resumes writing
+				return;
+			}
+		}
+	}
+
+	@Override
+	public synchronized void onError(Throwable t) {
+		log.warn("Item stream aborted after {} items: {}", count, t.toString());
+		finish();
+	}
+
+	@Override
+	public synchronized void onTimeout(AsyncEvent event) {
+		log.warn("Item stream timed out after {} items", count);
+		finish();
+	}
+
+	@Override
+	public synchronized void onError(AsyncEvent event) {
+		onError(event.getThrowable());
+	}
+
+	@Override
+	public void onComplete(AsyncEvent event) {
+	}
+
+	@Override
+	public void onStartAsync(AsyncEvent event) {
+	}
+
+	private void fetchNext() {
+		if (fetching || exhausted) {
+			return;
+		}
+		fetching = true;
+		long after = cursor;
+		try {
+			CompletableFuture.supplyAsync(() -> itemCatalog.findPage(after, pageSize), executor)
+					.whenComplete(this::onPage);
+		} catch (RejectedExecutionException e) {
+			log.error("Item stream aborted after {} items because the async pool is saturated", count);
+			finish();
+		}
+	}
+
+	private synchronized void onPage(ItemPage page, Throwable failure) {
+		fetching = false;
+		if (done) {
+			return;
+		}
+		if (failure != null) {
+			log.error("Item stream aborted after {} items", count, failure);
+			finish();
+			return;
+		}
+		try {
+			pending = serialize(page.getItems());
+			if (page.getNextCursor() == null) {
+				exhausted = true;
+			} else {
+				cursor = page.getNextCursor();
+			}
+			onWritePossible();
+		} catch (IOException e) {
+			onError(e);
+		}
+	}
+
+	private byte[] serialize(List<ItemView> items) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream(items.size() * 128);
+		for (ItemView item : items) {
+			if (count++ > 0) {
+				buffer.write(',');
+			}
+			buffer.write(objectMapper.writeValueAsBytes(item));
+		}
+		return buffer.toByteArray();
+	}
+
+	private void finish() {
+		if (done) {
+			return;
+		}
+		done = true;
+		context.complete();
+	}
+}
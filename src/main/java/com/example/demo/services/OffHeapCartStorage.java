@@ -0,0 +1,533 @@
+package com.example.demo.services;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.CartItem;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.responses.CartView;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * {@link CartStorage} that keeps cart contents in direct memory outside the Java heap,
+ * selected with {@code cart.storage=off-heap}. Every cart owns a fixed slot of
+ * {@code 16 + 16 * cart.off-heap.max-lines} bytes: the number of lines, a change
+ * counter and the id of the owning user followed by one (item id, quantity, unit price
+ * in cents) record per line. Slots are addressed by cart id inside direct buffers of {@code cart.off-heap.carts-per-chunk} slots that are
+ * allocated on first write, so an abandoned cart costs its slot and nothing on the heap
+ * or for the garbage collector.
+ * <p>
+ * Changes are applied to a short-lived {@link Cart} built from the slot, so the same
+ * cart rules apply as with the JPA storage; items are resolved through the
+ * {@link ItemCatalog} cache. Carts are locked in stripes rather than one lock each.
+ * The change counter serves as the cart version: checkout only empties a slot that is
+ * unchanged since the cart was read for the order.
+ * <p>
+ * With {@code cart.off-heap.snapshot-file} set, all non-empty carts are written to that
+ * file every {@code cart.off-heap.snapshot-interval-seconds} and on shutdown, and read
+ * back on startup. A snapshot is written next to the file and then moved over it, so a
+ * crash leaves the previous one intact; changes after the last snapshot are lost. Each
+ * cart is stored with its owner and only restored if that user still owns a cart with
+ * the same id, so carts never move to another user after the database was reset.
+ * Snapshots need a persistent database: with an in-memory one the ids start over on
+ * every restart and can match again by chance, so startup is refused.
+ */
+@Service
+@ConditionalOnProperty(name = "cart.storage", havingValue = "off-heap")
+public class OffHeapCartStorage implements CartStorage, DisposableBean {
+
+	private static final Logger log = LoggerFactory.getLogger(OffHeapCartStorage.class);
+
+	private static final int SNAPSHOT_MAGIC = 0x43415254;
+
+	private static final int SNAPSHOT_VERSION = 2;
+
+	private static final long SNAPSHOT_END = -1L;
+
+	private static final int HEADER_BYTES = 16;
+
+	private static final int VERSION_OFFSET = 4;
+
+	private static final int OWNER_OFFSET = 8;
+
+	private static final int OWNER_QUERY_BATCH = 1000;
+
+	private static final int LINE_BYTES = 16;
+
+	private static final int LOCK_STRIPES = 256;
+
+	private final ItemCatalog itemCatalog;
+
+	private final UserRepository userRepository;
+
+	private final int maxLines;
+
+	private final int slotBytes;
+
+	private final int cartsPerChunk;
+
+	private final int chunkBytes;
+
+	private final ConcurrentMap<Long, ByteBuffer> chunks = new ConcurrentHashMap<>();
+
+	private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+
+	private final AtomicLong nonEmptyCarts = new AtomicLong();
+
+	private final Path snapshotFile;
+
+	private final ScheduledExecutorService snapshotter;
+
+	public OffHeapCartStorage(ItemCatalog itemCatalog, UserRepository userRepository, MeterRegistry registry,
+			@Value("${cart.off-heap.max-lines:32}") int maxLines,
+			@Value("${cart.off-heap.carts-per-chunk:4096}") int cartsPerChunk,
+			@Value("${cart.off-heap.snapshot-file:}") String snapshotFile,
+			@Value("${cart.off-heap.snapshot-interval-seconds:60}") long snapshotIntervalSeconds,
+			@Value("${spring.datasource.url:}") String datasourceUrl) throws IOException {
+		if (!snapshotFile.isEmpty() && isInMemory(datasourceUrl)) {
+			throw new IllegalStateException("cart.off-heap.snapshot-file needs a persistent database, not "
+					+ (datasourceUrl.isEmpty() ? "the embedded default" : datasourceUrl));
+		}
+		this.itemCatalog = itemCatalog;
+		this.userRepository = userRepository;
+		this.maxLines = maxLines;
+		this.slotBytes = HEADER_BYTES + LINE_BYTES * maxLines;
+		this.cartsPerChunk = cartsPerChunk;
+		this.chunkBytes = Math.multiplyExact(slotBytes, cartsPerChunk);
+		for (int i = 0; i < LOCK_STRIPES; i++) {
+			locks[i] = new ReentrantLock();
+		}
+		this.snapshotFile = snapshotFile.isEmpty() ? null : Paths.get(snapshotFile);
+
+		Gauge.builder("cart.off-heap.bytes", chunks, c -> (double) c.size() * chunkBytes)
+				.description("Direct memory allocated for cart slots")
+				.baseUnit("bytes")
+				.register(registry);
+		Gauge.builder("cart.off-heap.carts", nonEmptyCarts, AtomicLong::get)
+				.description("Carts with at least one line")
+				.register(registry);
+
+		restore();
+		if (this.snapshotFile == null) {
+			this.snapshotter = null;
+			return;
+		}
+		this.snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "cart-snapshot");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.snapshotter.scheduleWithFixedDelay(this::snapshotScheduled, snapshotIntervalSeconds,
+				snapshotIntervalSeconds, TimeUnit.SECONDS);
+	}
+
+	@Override
+	public Optional<CartView> addItem(UserSummary user, Item item, int quantity) {
+		return update(user, cart -> cart.addItem(item, quantity));
+	}
+
+	@Override
+	public Optional<CartView> removeItem(UserSummary user, Item item, int quantity) {
+		return update(user, cart -> cart.removeItem(item, quantity));
+	}
+
+	@Override
+	public Optional<CartView> applyAll(UserSummary user, Consumer<Cart> changes) {
+		return update(user, changes);
+	}
+
+	@Override
+	public Optional<Cart> findForCheckout(UserSummary user) {
+		if (user.getCartId() == null) {
+			return Optional.empty();
+		}
+		ReentrantLock lock = lock(user.getCartId());
+		lock.lock();
+		try {
+			return Optional.of(read(user.getCartId()));
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Empties the slot at once if it is unchanged since {@link #findForCheckout}, so a
+	 * second checkout of the same contents and changes made in between are both
+	 * rejected. If the submitting transaction rolls back, the ordered lines are put back.
+	 */
+	@Override
+	public void checkedOut(UserSummary user, Cart cart) {
+		long cartId = cart.getId();
+		ReentrantLock lock = lock(cartId);
+		lock.lock();
+		try {
+			if (version(cartId) != cart.getVersion()) {
+				throw new ConcurrencyFailureException("Cart " + cartId + " changed during checkout");
+			}
+			clear(cartId);
+		} finally {
+			lock.unlock();
+		}
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					if (status == STATUS_ROLLED_BACK) {
+						putBack(cart);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Writes every non-empty cart to the snapshot file.
+	 */
+	public void snapshot() throws IOException {
+		Path temp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+		byte[] slot = new byte[slotBytes];
+		long carts = 0;
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024))) {
+			out.writeInt(SNAPSHOT_MAGIC);
+			out.writeInt(SNAPSHOT_VERSION);
+			for (Map.Entry<Long, ByteBuffer> chunk : new TreeMap<>(chunks).entrySet()) {
+				long firstCartId = chunk.getKey() * cartsPerChunk;
+				for (int index = 0; index < cartsPerChunk; index++) {
+					long cartId = firstCartId + index;
+					int count = copySlot(cartId, chunk.getValue(), index * slotBytes, slot);
+					if (count == 0) {
+						continue;
+					}
+					out.writeLong(cartId);
+					out.writeLong(ByteBuffer.wrap(slot).getLong(OWNER_OFFSET));
+					out.writeInt(count);
+					out.write(slot, HEADER_BYTES, count * LINE_BYTES);
+					carts++;
+				}
+			}
+			out.writeLong(SNAPSHOT_END);
+		}
+		Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		log.info("Wrote {} carts to {}", carts, snapshotFile);
+	}
+
+	@Override
+	public void destroy() throws IOException, InterruptedException {
+		if (snapshotter == null) {
+			return;
+		}
+		snapshotter.shutdown();
+		snapshotter.awaitTermination(10, TimeUnit.SECONDS);
+		snapshot();
+	}
+
+	private Optional<CartView> update(UserSummary user, Consumer<Cart> change) {
+		if (user.getCartId() == null) {
+			return Optional.empty();
+		}
+		long cartId = user.getCartId();
+		ReentrantLock lock = lock(cartId);
+		lock.lock();
+		try {
+			Cart cart = read(cartId);
+			change.accept(cart);
+			write(cartId, cart);
+			ByteBuffer chunk = chunks.get(cartId / cartsPerChunk);
+			if (chunk != null) {
+				chunk.putLong(offset(cartId) + OWNER_OFFSET, user.getId());
+			}
+			return Optional.of(CartView.from(cart));
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private Cart read(long cartId) {
+		Cart cart = new Cart();
+		cart.setId(cartId);
+		List<CartItem> lines = new ArrayList<>();
+		long totalCents = 0;
+		ByteBuffer chunk = chunks.get(cartId / cartsPerChunk);
+		if (chunk != null) {
+			int base = offset(cartId);
+			cart.setVersion(chunk.getInt(base + VERSION_OFFSET));
+			int count = chunk.getInt(base);
+			for (int i = 0; i < count; i++) {
+				int at = base + HEADER_BYTES + i * LINE_BYTES;
+				Optional<Item> item = itemCatalog.findById((long) chunk.getInt(at));
+				if (!item.isPresent()) {
+					// the item was deleted from the catalog since it was put into the cart
+					continue;
+				}
+				CartItem line = new CartItem(cart, item.get());
+				line.setQuantity(chunk.getInt(at + 4));
+				line.setUnitPrice(BigDecimal.valueOf(chunk.getLong(at + 8), 2));
+				lines.add(line);
+				totalCents += line.getUnitPriceCents() * line.getQuantity();
+			}
+		}
+		cart.setItems(lines);
+		cart.setTotal(BigDecimal.valueOf(totalCents, 2));
+		return cart;
+	}
+
+	private void write(long cartId, Cart cart) {
+		List<CartItem> lines = cart.getItems() == null ? Collections.<CartItem>emptyList() : cart.getItems();
+		if (lines.size() > maxLines) {
+			throw new CartCapacityExceededException(cartId, maxLines);
+		}
+		if (lines.isEmpty() && !chunks.containsKey(cartId / cartsPerChunk)) {
+			return;
+		}
+		ByteBuffer chunk = chunk(cartId);
+		int base = offset(cartId);
+		int previous = chunk.getInt(base);
+		for (int i = 0; i < lines.size(); i++) {
+			CartItem line = lines.get(i);
+			int at = base + HEADER_BYTES + i * LINE_BYTES;
+			chunk.putInt(at, Math.toIntExact(line.getItem().getId()));
+			chunk.putInt(at + 4, line.getQuantity());
+			chunk.putLong(at + 8, line.getUnitPriceCents());
+		}
+		chunk.putInt(base, lines.size());
+		chunk.putInt(base + VERSION_OFFSET, chunk.getInt(base + VERSION_OFFSET) + 1);
+		countTransition(previous, lines.size());
+	}
+
+	/**
+	 * Called with the slot's lock held.
+	 */
+	private void clear(long cartId) {
+		ByteBuffer chunk = chunks.get(cartId / cartsPerChunk);
+		if (chunk != null) {
+			int base = offset(cartId);
+			countTransition(chunk.getInt(base), 0);
+			chunk.putInt(base, 0);
+			chunk.putInt(base + VERSION_OFFSET, chunk.getInt(base + VERSION_OFFSET) + 1);
+		}
+	}
+
+	private int version(long cartId) {
+		ByteBuffer chunk = chunks.get(cartId / cartsPerChunk);
+		return chunk == null ? 0 : chunk.getInt(offset(cartId) + VERSION_OFFSET);
+	}
+
+	/**
+	 * Adds the lines of a rolled back checkout to whatever the cart holds by now.
+	 */
+	private void putBack(Cart ordered) {
+		long cartId = ordered.getId();
+		ReentrantLock lock = lock(cartId);
+		lock.lock();
+		try {
+			Cart cart = read(cartId);
+			for (CartItem line : ordered.getItems()) {
+				CartItem current = cart.getItems().stream()
+						.filter(l -> l.getItem().getId().equals(line.getItem().getId()))
+						.findFirst()
+						.orElse(null);
+				if (current == null) {
+					current = new CartItem(cart, line.getItem());
+					current.setUnitPrice(line.getUnitPrice());
+					cart.getItems().add(current);
+				}
+				current.setQuantity(current.getQuantity() + line.getQuantity());
+			}
+			write(cartId, cart);
+		} catch (CartCapacityExceededException e) {
+			log.warn("Could not put the lines of a failed checkout back into cart {}", cartId, e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Copies one slot under its lock, so the snapshot never sees a half-written cart.
+	 *
+	 * @return the number of lines in the slot
+	 */
+	private int copySlot(long cartId, ByteBuffer chunk, int base, byte[] slot) {
+		ReentrantLock lock = lock(cartId);
+		lock.lock();
+		try {
+			int count = chunk.getInt(base);
+			if (count > 0) {
+				ByteBuffer source = chunk.duplicate();
+				source.position(base);
+				source.get(slot, 0, HEADER_BYTES + count * LINE_BYTES);
+			}
+			return count;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Restores the carts whose owner in the snapshot still owns a cart with that id.
+	 */
+	private void restore() throws IOException {
+		if (snapshotFile == null || !Files.exists(snapshotFile)) {
+			return;
+		}
+		List<SnapshotRecord> records = new ArrayList<>();
+		long oversized = 0;
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(Files.newInputStream(snapshotFile), 64 * 1024))) {
+			if (in.readInt() != SNAPSHOT_MAGIC) {
+				throw new IOException("Not a cart snapshot: " + snapshotFile);
+			}
+			int version = in.readInt();
+			if (version != SNAPSHOT_VERSION) {
+				log.warn("Ignoring {}, its version {} does not record cart owners", snapshotFile, version);
+				return;
+			}
+			for (long cartId = in.readLong(); cartId != SNAPSHOT_END; cartId = in.readLong()) {
+				long owner = in.readLong();
+				int count = in.readInt();
+				byte[] lines = new byte[count * LINE_BYTES];
+				in.readFully(lines);
+				if (count > maxLines) {
+					oversized++;
+					continue;
+				}
+				records.add(new SnapshotRecord(cartId, owner, count, lines));
+			}
+		}
+
+		Map<Long, Long> owners = owners(records);
+		long restored = 0;
+		long foreign = 0;
+		for (SnapshotRecord record : records) {
+			Long owner = owners.get(record.cartId);
+			if (owner == null || owner != record.owner) {
+				foreign++;
+				continue;
+			}
+			ByteBuffer chunk = chunk(record.cartId);
+			int base = offset(record.cartId);
+			ByteBuffer target = chunk.duplicate();
+			target.position(base + HEADER_BYTES);
+			target.put(record.lines);
+			countTransition(chunk.getInt(base), record.count);
+			chunk.putInt(base, record.count);
+			chunk.putLong(base + OWNER_OFFSET, record.owner);
+			restored++;
+		}
+		if (oversized > 0) {
+			log.warn("Skipped {} carts from {} with more than {} lines", oversized, snapshotFile, maxLines);
+		}
+		if (foreign > 0) {
+			log.warn("Skipped {} carts from {} that no longer belong to the user they were saved for", foreign,
+					snapshotFile);
+		}
+		log.info("Restored {} carts from {}", restored, snapshotFile);
+	}
+
+	/**
+	 * @return the current owner of each cart in {@code records} that still has one
+	 */
+	private Map<Long, Long> owners(List<SnapshotRecord> records) {
+		Map<Long, Long> owners = new HashMap<>();
+		for (int from = 0; from < records.size(); from += OWNER_QUERY_BATCH) {
+			List<Long> cartIds = new ArrayList<>(OWNER_QUERY_BATCH);
+			for (SnapshotRecord record : records.subList(from, Math.min(from + OWNER_QUERY_BATCH, records.size()))) {
+				cartIds.add(record.cartId);
+			}
+			for (User user : userRepository.findByCartIdIn(cartIds)) {
+				owners.put(user.getCart().getId(), user.getId());
+			}
+		}
+		return owners;
+	}
+
+	private static boolean isInMemory(String datasourceUrl) {
+		// without a configured url Spring Boot starts an embedded in-memory database
+		return datasourceUrl.isEmpty() || datasourceUrl.contains(":mem:") || datasourceUrl.contains(":memory:");
+	}
+
+	private void snapshotScheduled() {
+		try {
+			snapshot();
+		} catch (IOException | RuntimeException e) {
+			log.error("Writing the cart snapshot to {} failed", snapshotFile, e);
+		}
+	}
+
+	private void countTransition(int previousLines, int lines) {
+		if (previousLines == 0 && lines > 0) {
+			nonEmptyCarts.incrementAndGet();
+		} else if (previousLines > 0 && lines == 0) {
+			nonEmptyCarts.decrementAndGet();
+		}
+	}
+
+	private ByteBuffer chunk(long cartId) {
+		return chunks.computeIfAbsent(cartId / cartsPerChunk, index -> ByteBuffer.allocateDirect(chunkBytes));
+	}
+
+	private int offset(long cartId) {
+		return (int) (cartId % cartsPerChunk) * slotBytes;
+	}
+
+	private ReentrantLock lock(long cartId) {
+		return locks[(int) (cartId % LOCK_STRIPES)];
+	}
+
+	private static final class SnapshotRecord {
+
+		final long cartId;
+
+		final long owner;
+
+		final int count;
+
+		final byte[] lines;
+
+		SnapshotRecord(long cartId, long owner, int count, byte[] lines) {
+			this.cartId = cartId;
+			this.owner = owner;
+			this.count = count;
+			this.lines = lines;
+		}
+	}
+}
@@ -0,0 +1,244 @@
+package com.example.demo.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.Lock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.journal.OrderJournalService;
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.OrderItem;
+import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.model.persistence.repositories.OrderRepository;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.responses.OrderHistoryPage;
+import com.example.demo.model.responses.OrderSummary;
+import com.example.demo.model.responses.OrderView;
+
+/**
+ * Turns a cart into an order. Snapshotting the cart lines, saving the order and
+ * emptying the cart happen in one transaction, so a failed submission leaves the cart
+ * untouched and a successful one can not be submitted twice by accident. Orders leave
+ * the service as {@link OrderView}s built inside the transaction. The cart is read and
+ * emptied through the configured {@link CartStorage}.
+ * <p>
+ * With {@code orders.journal.enabled=true} orders are handed to the
+ * {@link OrderJournalService} instead and written to the database in the background;
+ * lookups then check the not yet projected orders first. The emptied cart is committed
+ * before the order is journaled, and put back if journaling fails.
+ */
+@Service
+public class OrderService {
+
+	private static final Logger log = LoggerFactory.getLogger(OrderService.class);
+
+	@Autowired
+	private OrderRepository orderRepository;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private CartStorage cartStorage;
+
+	@Autowired(required = false)
+	private OrderJournalService orderJournal;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	/**
+	 * Submits the cart of the given user. When an idempotency key is given and an order
+	 * with the same key already exists for this user, that order is returned instead.
+	 * Two concurrent submissions with the same key are rejected by the unique
+	 * constraint on (user_id, idempotency_key); callers should then look the winning
+	 * order up with {@link #findByIdempotencyKey(UserSummary, String)}.
+	 *
+	 * @return the new or previously submitted order, empty if the user has no cart
+	 * @throws IllegalStateException if journaled submissions are enabled and the caller
+	 * already runs a transaction, which would keep the emptied cart from committing first
+	 */
+	public Optional<OrderView> submit(UserSummary user, String idempotencyKey) {
+		if (orderJournal != null) {
+			return submitToJournal(user, idempotencyKey);
+		}
+		return transactionTemplate.execute(status -> submitToDatabase(user, idempotencyKey));
+	}
+
+	private Optional<OrderView> submitToDatabase(UserSummary user, String idempotencyKey) {
+		Optional<OrderView> existing = findByIdempotencyKey(user, idempotencyKey);
+		if (existing.isPresent()) {
+			return existing;
+		}
+
+		if (user.getCartId() == null) {
+			return Optional.empty();
+		}
+		Optional<Cart> cart = cartStorage.findForCheckout(user);
+		if (!cart.isPresent()) {
+			return Optional.empty();
+		}
+
+		UserOrder order = UserOrder.createFromCart(cart.get());
+		order.setUser(userRepository.getOne(user.getId()));
+		order.setIdempotencyKey(idempotencyKey);
+		orderRepository.saveAndFlush(order);
+
+		cartStorage.checkedOut(user, cart.get());
+
+		return Optional.of(OrderView.from(order));
+	}
+
+	/**
+	 * Journaled submissions of one user are serialized, as the unique constraint only
+	 * applies once the projector inserts the order. A journaled order can not be taken
+	 * back, so the emptied cart is committed first: a cart that changed concurrently fails
+	 * the submission before anything is journaled, and a commit that fails can not leave a
+	 * journaled order behind a full cart. The append then waits for the fsync without
+	 * holding a database connection. If it fails, the ordered lines are put back into the
+	 * cart; a crash in between loses them rather than ordering them twice.
+	 */
+	private Optional<OrderView> submitToJournal(UserSummary user, String idempotencyKey) {
+		if (TransactionSynchronizationManager.isActualTransactionActive()) {
+			throw new IllegalStateException("Journaled orders have to be submitted outside of a transaction");
+		}
+		Lock lock = orderJournal.userLock(user.getId());
+		lock.lock();
+		try {
+			Optional<OrderView> existing = findByIdempotencyKey(user, idempotencyKey);
+			if (existing.isPresent()) {
+				return existing;
+			}
+
+			if (user.getCartId() == null) {
+				return Optional.empty();
+			}
+			UserOrder order = transactionTemplate.execute(status -> checkOutForJournal(user, idempotencyKey));
+			if (order == null) {
+				return Optional.empty();
+			}
+			try {
+				return Optional.of(orderJournal.append(user.getId(), order));
+			} catch (IllegalStateException e) {
+				restoreCart(user, order);
+				throw e;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the order with ids assigned, {@code null} if the user has no cart
+	 */
+	private UserOrder checkOutForJournal(UserSummary user, String idempotencyKey) {
+		Optional<Cart> cart = cartStorage.findForCheckout(user);
+		if (!cart.isPresent()) {
+			return null;
+		}
+		UserOrder order = UserOrder.createFromCart(cart.get());
+		order.setIdempotencyKey(idempotencyKey);
+		orderJournal.assignIds(order);
+		cartStorage.checkedOut(user, cart.get());
+		return order;
+	}
+
+	/**
+	 * Compensates a checkout whose order could not be journaled by adding its lines to
+	 * whatever the cart holds by now.
+	 */
+	private void restoreCart(UserSummary user, UserOrder order) {
+		try {
+			cartStorage.applyAll(user, cart -> {
+				for (OrderItem line : order.getItems()) {
+					cart.addItem(line.getItem(), line.getQuantity());
+				}
+			});
+		} catch (RuntimeException e) {
+			log.error("Could not put the lines of an order that failed to journal back into cart {}",
+					user.getCartId(), e);
+		}
+	}
+
+	@Transactional(readOnly = true)
+	public Optional<OrderView> findByIdempotencyKey(UserSummary user, String idempotencyKey) {
+		if (idempotencyKey == null) {
+			return Optional.empty();
+		}
+		if (orderJournal != null) {
+			Optional<OrderView> pending = orderJournal.findByIdempotencyKey(user.getId(), idempotencyKey);
+			if (pending.isPresent()) {
+				return pending;
+			}
+		}
+		return orderRepository.findByUserIdAndIdempotencyKey(user.getId(), idempotencyKey).map(OrderView::from);
+	}
+
+	/**
+	 * Page of order summaries, newest first, with ids below {@code cursor}. Summaries
+	 * are a single aggregate query and never load the order items themselves.
+	 */
+	@Transactional(readOnly = true)
+	public OrderHistoryPage findHistory(UserSummary user, long cursor, int size) {
+		// pending orders first, so one projected in between is still found in the database
+		List<OrderSummary> pending = orderJournal == null ? Collections.emptyList()
+				: orderJournal.findSummaries(user.getId(), cursor);
+		List<OrderSummary> orders = orderRepository.findSummariesByUserId(user.getId(), cursor,
+				PageRequest.of(0, size + 1));
+		orders = mergePending(pending, orders);
+		if (orders.size() <= size) {
+			return new OrderHistoryPage(orders, null);
+		}
+		List<OrderSummary> page = orders.subList(0, size);
+		return new OrderHistoryPage(page, page.get(size - 1).getId());
+	}
+
+	/**
+	 * Loads one order of the given user together with its items in a single query.
+	 */
+	@Transactional(readOnly = true)
+	public Optional<OrderView> findOrder(UserSummary user, long orderId) {
+		if (orderJournal != null) {
+			Optional<OrderView> pending = orderJournal.findOrder(user.getId(), orderId);
+			if (pending.isPresent()) {
+				return pending;
+			}
+		}
+		return orderRepository.findWithItemsByIdAndUserId(orderId, user.getId()).map(OrderView::from);
+	}
+
+	/**
+	 * Merges two newest-first lists; an order that was projected in between shows up in
+	 * both and is kept once.
+	 */
+	private static List<OrderSummary> mergePending(List<OrderSummary> pending, List<OrderSummary> projected) {
+		if (pending.isEmpty()) {
+			return projected;
+		}
+		List<OrderSummary> merged = new ArrayList<>(pending.size() + projected.size());
+		int p = 0;
+		int q = 0;
+		while (p < pending.size() || q < projected.size()) {
+			if (q == projected.size()
+					|| (p < pending.size() && pending.get(p).getId() >= projected.get(q).getId())) {
+				if (q < projected.size() && pending.get(p).getId().equals(projected.get(q).getId())) {
+					q++;
+				}
+				merged.add(pending.get(p++));
+			} else {
+				merged.add(projected.get(q++));
+			}
+		}
+		return merged;
+	}
+}
@@ -0,0 +1,66 @@
+package com.example.demo.services;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * Caffeine cache whose misses are loaded by the calling thread outside of the cache.
+ * A {@code LoadingCache} runs the loader inside the map's compute, which holds a
+ * {@code ConcurrentHashMap} bin monitor for the length of the database query and so
+ * pins a virtual request thread to its carrier. Here concurrent misses of the same key
+ * may each run the query; the first value stored wins.
+ * <p>
+ * A value loaded while the cache is invalidated may predate the invalidating write, so
+ * it is removed again instead of being served until it expires.
+ */
+final class ReadThroughCache<K, V> {
+
+	private final Cache<K, V> cache;
+
+	private final Function<K, V> loader;
+
+	private final AtomicLong invalidations = new AtomicLong();
+
+	ReadThroughCache(Cache<K, V> cache, Function<K, V> loader) {
+		this.cache = cache;
+		this.loader = loader;
+	}
+
+	V get(K key) {
+		V cached = cache.getIfPresent(key);
+		if (cached != null) {
+			return cached;
+		}
+		long seen = invalidations.get();
+		V loaded = loader.apply(key);
+		V winner = cache.asMap().putIfAbsent(key, loaded);
+		if (winner != null) {
+			return winner;
+		}
+		if (invalidations.get() != seen) {
+			cache.asMap().remove(key, loaded);
+		}
+		return loaded;
+	}
+
+	void invalidate(K key) {
+		invalidations.incrementAndGet();
+		cache.invalidate(key);
+	}
+
+	void invalidateAll() {
+		invalidations.incrementAndGet();
+		cache.invalidateAll();
+	}
+
+	CacheStats stats() {
+		return cache.stats();
+	}
+
+	Cache<K, V> cache() {
+		return cache;
+	}
+}
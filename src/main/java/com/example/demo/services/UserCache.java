@@ -0,0 +1,88 @@
+package com.example.demo.services;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Username to {@link UserSummary} cache shared by the security layer and the
+ * controllers. Unknown usernames are cached as well, for a shorter time, so repeated
+ * lookups of missing users do not reach the database either. Has to be invalidated
+ * whenever a user is created or changes its password.
+ */
+@Service
+public class UserCache implements MeterBinder {
+
+	private final ReadThroughCache<String, Optional<UserSummary>> users;
+
+	public UserCache(UserRepository userRepository,
+			@Value("${users.cache.maximum-size:10000}") long maximumSize,
+			@Value("${users.cache.ttl-seconds:300}") long ttlSeconds,
+			@Value("${users.cache.negative-ttl-seconds:30}") long negativeTtlSeconds) {
+		long ttl = TimeUnit.SECONDS.toNanos(ttlSeconds);
+		long negativeTtl = TimeUnit.SECONDS.toNanos(negativeTtlSeconds);
+		this.users = new ReadThroughCache<>(Caffeine.newBuilder()
+				.maximumSize(maximumSize)
+				.expireAfter(new Expiry<String, Optional<UserSummary>>() {
+					@Override
+					public long expireAfterCreate(String username, Optional<UserSummary> user, long currentTime) {
+						return user.isPresent() ? ttl : negativeTtl;
+					}
+
+					@Override
+					public long expireAfterUpdate(String username, Optional<UserSummary> user, long currentTime,
+							long currentDuration) {
+						return expireAfterCreate(username, user, currentTime);
+					}
+
+					@Override
+					public long expireAfterRead(String username, Optional<UserSummary> user, long currentTime,
+							long currentDuration) {
+						return currentDuration;
+					}
+				})
+				.recordStats()
+				.build(), username -> {
+					User user = userRepository.findByUsername(username);
+					return user == null ? Optional.<UserSummary>empty() : Optional.of(UserSummary.of(user));
+				});
+	}
+
+	public Optional<UserSummary> findByUsername(String username) {
+		if (username == null) {
+			return Optional.empty();
+		}
+		return users.get(username);
+	}
+
+	public void invalidate(String username) {
+		if (username != null) {
+			users.invalidate(username);
+		}
+	}
+
+	public void invalidateAll() {
+		users.invalidateAll();
+	}
+
+	public CacheStats stats() {
+		return users.stats();
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		CaffeineCacheMetrics.monitor(registry, users.cache(), "users.byUsername");
+	}
+}
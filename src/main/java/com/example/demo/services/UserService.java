@@ -0,0 +1,70 @@
+package com.example.demo.services;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.security.PasswordHashingExecutor;
+
+/**
+ * Signup. Duplicate names are turned away before any hashing: the
+ * {@link UsernameFilter} clears most new names without a lookup, and possible
+ * duplicates are confirmed through the {@link UserCache}. The password is hashed on the
+ * {@link PasswordHashingExecutor} pool, then the user and its cart are inserted
+ * together in one transaction through the cascade on {@code User.cart}. The unique
+ * constraint on the username stays the final guard against concurrent signups.
+ */
+@Service
+public class UserService {
+
+	private final UserRepository userRepository;
+
+	private final UserCache userCache;
+
+	private final UsernameFilter usernameFilter;
+
+	private final PasswordHashingExecutor passwordHashingExecutor;
+
+	private final BCryptPasswordEncoder bCryptPasswordEncoder;
+
+	public UserService(UserRepository userRepository, UserCache userCache, UsernameFilter usernameFilter,
+			PasswordHashingExecutor passwordHashingExecutor, BCryptPasswordEncoder bCryptPasswordEncoder) {
+		this.userRepository = userRepository;
+		this.userCache = userCache;
+		this.usernameFilter = usernameFilter;
+		this.passwordHashingExecutor = passwordHashingExecutor;
+		this.bCryptPasswordEncoder = bCryptPasswordEncoder;
+	}
+
+	public boolean isTaken(String username) {
+		return usernameFilter.mightExist(username) && userCache.findByUsername(username).isPresent();
+	}
+
+	/**
+	 * Hashes the password off the calling thread and inserts the user with an empty
+	 * cart. The future fails with a {@link DataIntegrityViolationException} if the name
+	 * was taken in the meantime.
+	 *
+	 * @throws RejectedExecutionException if the hashing pool is saturated
+	 */
+	public CompletableFuture<User> create(String username, String password) {
+		return passwordHashingExecutor.submit(() -> bCryptPasswordEncoder.encode(password))
+				.thenApply(hash -> {
+					User user = new User();
+					user.setUsername(username);
+					user.setPassword(hash);
+					user.setCart(new Cart());
+					userRepository.save(user);
+
+					usernameFilter.add(username);
+					userCache.invalidate(username);
+					return user;
+				});
+	}
+}
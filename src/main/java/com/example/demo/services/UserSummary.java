@@ -0,0 +1,46 @@
+package com.example.demo.services;
+
+import com.example.demo.model.persistence.User;
+
+/**
+ * Immutable snapshot of the user columns needed on hot paths, safe to share between
+ * requests because it holds no references to managed entities.
+ */
+public final class UserSummary {
+
+	private final long id;
+
+	private final String username;
+
+	private final String password;
+
+	private final Long cartId;
+
+	public UserSummary(long id, String username, String password, Long cartId) {
+		this.id = id;
+		this.username = username;
+		this.password = password;
+		this.cartId = cartId;
+	}
+
+	public static UserSummary of(User user) {
+		return new UserSummary(user.getId(), user.getUsername(), user.getPassword(),
+				user.getCart() == null ? null : user.getCart().getId());
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public String getPassword() {
+		return password;
+	}
+
+	public Long getCartId() {
+		return cartId;
+	}
+}
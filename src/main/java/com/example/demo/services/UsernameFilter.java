@@ -0,0 +1,115 @@
+package com.example.demo.services;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.model.persistence.repositories.UserRepository;
+
+/**
+ * Bloom filter over all usernames, loaded from the database at startup and extended
+ * on every signup. A name the filter has never seen is certainly free, so most
+ * signups skip the duplicate lookup; a hit only means the name may be taken and has
+ * to be confirmed. Until the filter is loaded every name counts as a possible hit.
+ * <p>
+ * Sized for {@code users.filter.expected-insertions} names at a false positive rate of
+ * {@code users.filter.false-positive-rate}; beyond that the rate degrades gracefully.
+ */
+@Service
+public class UsernameFilter {
+
+	private static final Logger log = LoggerFactory.getLogger(UsernameFilter.class);
+
+	private final UserRepository userRepository;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final AtomicLongArray bits;
+
+	private final long bitCount;
+
+	private final int hashCount;
+
+	private volatile boolean loaded;
+
+	public UsernameFilter(UserRepository userRepository, PlatformTransactionManager transactionManager,
+			@Value("${users.filter.expected-insertions:1000000}") long expectedInsertions,
+			@Value("${users.filter.false-positive-rate:0.01}") double falsePositiveRate) {
+		this.userRepository = userRepository;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.transactionTemplate.setReadOnly(true);
+		long n = Math.max(1, expectedInsertions);
+		long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+		this.bits = new AtomicLongArray((int) ((m + 63) / 64));
+		this.bitCount = bits.length() * 64L;
+		this.hashCount = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void load() {
+		long count = transactionTemplate.execute(status -> {
+			try (Stream<String> usernames = userRepository.streamUsernames()) {
+				return usernames.peek(this::add).count();
+			}
+		});
+		loaded = true;
+
+		log.info("Username filter loaded with {} names ({} bits, {} hashes)", count, bitCount, hashCount);
+	}
+
+	/**
+	 * @return {@code false} if no user with this name exists, {@code true} if one may
+	 */
+	public boolean mightExist(String username) {
+		if (!loaded) {
+			return true;
+		}
+		long hash = hash(username);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 1; i <= hashCount; i++) {
+			long bit = Integer.toUnsignedLong(h1 + i * h2) % bitCount;
+			if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public void add(String username) {
+		long hash = hash(username);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 1; i <= hashCount; i++) {
+			long bit = Integer.toUnsignedLong(h1 + i * h2) % bitCount;
+			int index = (int) (bit >>> 6);
+			long mask = 1L << bit;
+			long word;
+			do {
+				word = bits.get(index);
+			} while ((word & mask) == 0 && !bits.compareAndSet(index, word, word | mask));
+		}
+	}
+
+	/**
+	 * 64-bit FNV-1a over the UTF-16 code units, split into the two halves used for
+	 * double hashing.
+	 */
+	private static long hash(String username) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < username.length(); i++) {
+			char c = username.charAt(i);
+			hash = (hash ^ (c & 0xff)) * 0x100000001b3L;
+			hash = (hash ^ (c >>> 8)) * 0x100000001b3L;
+		}
+		return hash;
+	}
+}
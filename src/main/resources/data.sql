@@ -1,2 +1,6 @@
-insert into item (name, price, description) values ('Round Widget', 2.99, 'A widget that is round');
-insert into item (name, price, description) values ('Square Widget', 1.99, 'A widget that is square');
\ No newline at end of file
+merge into item (id, name, price, description) key (id) values (1, 'Round Widget', 2.99, 'A widget that is round');
+merge into item (id, name, price, description) key (id) values (2, 'Square Widget', 1.99, 'A widget that is square');
+-- Ids are handed out in blocks of 50 ending at the sequence value, so the first block
+-- starts right after the seed rows. Never moves the sequence backwards when the
+-- database is shared with an application instance that already allocated ids.
+alter sequence item_seq restart with (select greatest(52, current_value + 50) from information_schema.sequences where sequence_name = 'ITEM_SEQ');
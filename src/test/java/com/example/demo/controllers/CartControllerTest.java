@@ -6,7 +6,12 @@ import com.example.demo.model.persistence.User;
 import com.example.demo.model.persistence.repositories.CartRepository;
 import com.example.demo.model.persistence.repositories.ItemRepository;
 import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.requests.CartOperation;
+import com.example.demo.model.requests.ModifyCartBatchRequest;
 import com.example.demo.model.requests.ModifyCartRequest;
+import com.example.demo.model.responses.CartView;
+import com.example.demo.services.UserCache;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -17,11 +22,18 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 
 import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest
@@ -39,6 +51,14 @@ public class CartControllerTest {
     @Autowired
     private CartController cartController;
 
+    @Autowired
+    private UserCache userCache;
+
+    @Before
+    public void setUp() {
+        userCache.invalidateAll();
+    }
+
     @Test
     public void addToCartWithUserNotFound() {
         String username = "some_username";
@@ -49,7 +69,7 @@ public class CartControllerTest {
         cartRequest.setUsername(username);
         cartRequest.setQuantity(1);
 
-        ResponseEntity<Cart> response = cartController.addTocart(cartRequest);
+        ResponseEntity<CartView> response = cartController.addTocart(cartRequest);
 
         assertEquals(404, response.getStatusCode().value());
     }
@@ -66,7 +86,7 @@ public class CartControllerTest {
         cartRequest.setUsername(username);
         cartRequest.setQuantity(1);
 
-        ResponseEntity<Cart> response = cartController.addTocart(cartRequest);
+        ResponseEntity<CartView> response = cartController.addTocart(cartRequest);
 
         assertEquals(404, response.getStatusCode().value());
     }
@@ -89,31 +109,31 @@ public class CartControllerTest {
         item.setDescription(itemDescription);
 
         Cart cart = new Cart();
+        cart.setId(789L);
 
         user.setCart(cart);
 
         given(userRepository.findByUsername(username)).willReturn(user);
         given(itemRepository.findById(itemId)).willReturn(Optional.of(item));
+        given(cartRepository.findById(789L)).willReturn(Optional.of(cart));
 
         ModifyCartRequest cartRequest = new ModifyCartRequest();
         cartRequest.setItemId(itemId);
         cartRequest.setUsername(username);
         cartRequest.setQuantity(2);
 
-        ResponseEntity<Cart> response = cartController.addTocart(cartRequest);
-        Cart responseBody = Objects.requireNonNull(response.getBody());
+        ResponseEntity<CartView> response = cartController.addTocart(cartRequest);
+        CartView responseBody = Objects.requireNonNull(response.getBody());
 
         assertEquals(200, response.getStatusCode().value());
-        assertEquals(2, responseBody.getItems().size());
+        assertEquals(1, responseBody.getItems().size());
+        assertEquals(2, responseBody.getItems().get(0).getQuantity());
 
-        assertEquals(itemName, responseBody.getItems().get(0).getName());
-        assertEquals(itemName, responseBody.getItems().get(1).getName());
+        assertEquals(itemId, responseBody.getItems().get(0).getItemId().longValue());
 
-        assertEquals(itemDescription, responseBody.getItems().get(0).getDescription());
-        assertEquals(itemDescription, responseBody.getItems().get(1).getDescription());
+        assertEquals(itemName, responseBody.getItems().get(0).getName());
 
-        assertEquals(itemPrice, responseBody.getItems().get(0).getPrice());
-        assertEquals(itemPrice, responseBody.getItems().get(1).getPrice());
+        assertEquals(itemPrice, responseBody.getItems().get(0).getUnitPrice());
 
         assertEquals(BigDecimal.valueOf(24.68), responseBody.getTotal());
     }
@@ -128,7 +148,7 @@ public class CartControllerTest {
         cartRequest.setUsername(username);
         cartRequest.setQuantity(1);
 
-        ResponseEntity<Cart> response = cartController.removeFromcart(cartRequest);
+        ResponseEntity<CartView> response = cartController.removeFromcart(cartRequest);
 
         assertEquals(404, response.getStatusCode().value());
     }
@@ -145,7 +165,7 @@ public class CartControllerTest {
         cartRequest.setUsername(username);
         cartRequest.setQuantity(1);
 
-        ResponseEntity<Cart> response = cartController.removeFromcart(cartRequest);
+        ResponseEntity<CartView> response = cartController.removeFromcart(cartRequest);
 
         assertEquals(404, response.getStatusCode().value());
     }
@@ -171,29 +191,202 @@ public class CartControllerTest {
         cart.addItem(item);
         cart.addItem(item);
         cart.setTotal(BigDecimal.valueOf(24.68));
+        cart.setId(789L);
 
         user.setCart(cart);
 
         given(userRepository.findByUsername(username)).willReturn(user);
         given(itemRepository.findById(itemId)).willReturn(Optional.of(item));
+        given(cartRepository.findById(789L)).willReturn(Optional.of(cart));
 
         ModifyCartRequest cartRequest = new ModifyCartRequest();
         cartRequest.setItemId(itemId);
         cartRequest.setUsername(username);
         cartRequest.setQuantity(1);
 
-        ResponseEntity<Cart> response = cartController.removeFromcart(cartRequest);
-        Cart responseBody = Objects.requireNonNull(response.getBody());
+        ResponseEntity<CartView> response = cartController.removeFromcart(cartRequest);
+        CartView responseBody = Objects.requireNonNull(response.getBody());
 
         assertEquals(200, response.getStatusCode().value());
         assertEquals(1, responseBody.getItems().size());
+        assertEquals(1, responseBody.getItems().get(0).getQuantity());
 
-        assertEquals(itemName, responseBody.getItems().get(0).getName());
+        assertEquals(itemId, responseBody.getItems().get(0).getItemId().longValue());
 
-        assertEquals(itemDescription, responseBody.getItems().get(0).getDescription());
+        assertEquals(itemName, responseBody.getItems().get(0).getName());
 
-        assertEquals(itemPrice, responseBody.getItems().get(0).getPrice());
+        assertEquals(itemPrice, responseBody.getItems().get(0).getUnitPrice());
 
         assertEquals(BigDecimal.valueOf(12.34), responseBody.getTotal());
     }
+
+    @Test
+    public void removeFromCartMoreThanPresent() {
+        String username = "just_another_username";
+        long itemId = 456L;
+        BigDecimal itemPrice = BigDecimal.valueOf(12.34);
+
+        User user = new User();
+        user.setUsername(username);
+
+        Item item = new Item();
+        item.setId(itemId);
+        item.setPrice(itemPrice);
+
+        Cart cart = new Cart();
+        cart.addItem(item, 2);
+        cart.setId(789L);
+
+        user.setCart(cart);
+
+        given(userRepository.findByUsername(username)).willReturn(user);
+        given(itemRepository.findById(itemId)).willReturn(Optional.of(item));
+        given(cartRepository.findById(789L)).willReturn(Optional.of(cart));
+
+        ModifyCartRequest cartRequest = new ModifyCartRequest();
+        cartRequest.setItemId(itemId);
+        cartRequest.setUsername(username);
+        cartRequest.setQuantity(5);
+
+        ResponseEntity<CartView> response = cartController.removeFromcart(cartRequest);
+        CartView responseBody = Objects.requireNonNull(response.getBody());
+
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals(0, responseBody.getItems().size());
+        assertEquals(0, BigDecimal.ZERO.compareTo(responseBody.getTotal()));
+    }
+
+    @Test
+    public void removeFromCartItemNotPresent() {
+        String username = "just_another_username";
+
+        User user = new User();
+        user.setUsername(username);
+
+        Item itemInCart = new Item();
+        itemInCart.setId(456L);
+        itemInCart.setPrice(BigDecimal.valueOf(12.34));
+
+        Item otherItem = new Item();
+        otherItem.setId(457L);
+        otherItem.setPrice(BigDecimal.valueOf(99.99));
+
+        Cart cart = new Cart();
+        cart.addItem(itemInCart, 3);
+        cart.setId(789L);
+
+        user.setCart(cart);
+
+        given(userRepository.findByUsername(username)).willReturn(user);
+        given(itemRepository.findById(457L)).willReturn(Optional.of(otherItem));
+        given(cartRepository.findById(789L)).willReturn(Optional.of(cart));
+
+        ModifyCartRequest cartRequest = new ModifyCartRequest();
+        cartRequest.setItemId(457L);
+        cartRequest.setUsername(username);
+        cartRequest.setQuantity(1);
+
+        ResponseEntity<CartView> response = cartController.removeFromcart(cartRequest);
+        CartView responseBody = Objects.requireNonNull(response.getBody());
+
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals(1, responseBody.getItems().size());
+        assertEquals(BigDecimal.valueOf(37.02), responseBody.getTotal());
+    }
+
+    @Test
+    public void modifyCartInBatch() {
+        String username = "batch_username";
+
+        User user = new User();
+        user.setUsername(username);
+
+        Item first = new Item();
+        first.setId(1L);
+        first.setPrice(BigDecimal.valueOf(2.99));
+
+        Item second = new Item();
+        second.setId(2L);
+        second.setPrice(BigDecimal.valueOf(1.99));
+
+        Cart cart = new Cart();
+        cart.setId(789L);
+        user.setCart(cart);
+
+        given(userRepository.findByUsername(username)).willReturn(user);
+        given(itemRepository.findAllById(any())).willReturn(Arrays.asList(first, second));
+        given(cartRepository.findWithItemsById(789L)).willReturn(Optional.of(cart));
+
+        ModifyCartBatchRequest request = new ModifyCartBatchRequest();
+        request.setUsername(username);
+        request.setOperations(Arrays.asList(
+                operation(CartOperation.Action.ADD, 1L, 3),
+                operation(CartOperation.Action.ADD, 2L, 2),
+                operation(CartOperation.Action.REMOVE, 1L, 1)));
+
+        ResponseEntity<CartView> response = cartController.modifyCart(request);
+        CartView responseBody = Objects.requireNonNull(response.getBody());
+
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals(2, responseBody.getItems().size());
+        assertEquals(1L, responseBody.getItems().get(0).getItemId().longValue());
+        assertEquals(2, responseBody.getItems().get(0).getQuantity());
+        assertEquals(2L, responseBody.getItems().get(1).getItemId().longValue());
+        assertEquals(2, responseBody.getItems().get(1).getQuantity());
+        assertEquals(BigDecimal.valueOf(9.96), responseBody.getTotal());
+        verify(itemRepository, times(1)).findAllById(any());
+        verify(cartRepository, times(1)).saveAndFlush(cart);
+    }
+
+    @Test
+    public void modifyCartInBatchWithUnknownItem() {
+        String username = "batch_username";
+
+        User user = new User();
+        user.setUsername(username);
+        Cart cart = new Cart();
+        cart.setId(789L);
+        user.setCart(cart);
+
+        Item first = new Item();
+        first.setId(1L);
+        first.setPrice(BigDecimal.valueOf(2.99));
+
+        given(userRepository.findByUsername(username)).willReturn(user);
+        given(itemRepository.findAllById(any())).willReturn(Arrays.asList(first));
+
+        ModifyCartBatchRequest request = new ModifyCartBatchRequest();
+        request.setUsername(username);
+        request.setOperations(Arrays.asList(
+                operation(CartOperation.Action.ADD, 1L, 1),
+                operation(CartOperation.Action.ADD, 999L, 1)));
+
+        ResponseEntity<CartView> response = cartController.modifyCart(request);
+
+        assertEquals(404, response.getStatusCode().value());
+        verify(cartRepository, never()).saveAndFlush(any());
+    }
+
+    @Test
+    public void modifyCartInBatchTooLarge() {
+        List<CartOperation> operations = new ArrayList<>();
+        for (int i = 0; i < 101; i++) {
+            operations.add(operation(CartOperation.Action.ADD, 1L, 1));
+        }
+        ModifyCartBatchRequest request = new ModifyCartBatchRequest();
+        request.setUsername("batch_username");
+        request.setOperations(operations);
+
+        ResponseEntity<CartView> response = cartController.modifyCart(request);
+
+        assertEquals(400, response.getStatusCode().value());
+    }
+
+    private static CartOperation operation(CartOperation.Action action, long itemId, int quantity) {
+        CartOperation operation = new CartOperation();
+        operation.setAction(action);
+        operation.setItemId(itemId);
+        operation.setQuantity(quantity);
+        return operation;
+    }
 }
@@ -3,25 +3,44 @@ package com.example.demo.controllers;
 import com.example.demo.controllers.ItemController;
 import com.example.demo.model.persistence.Item;
 import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.responses.ItemPage;
+import com.example.demo.model.responses.ItemView;
+import com.auth0.jwt.JWT;
+import com.example.demo.services.ItemCatalog;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.ResponseEntity;
+import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 
+import static com.auth0.jwt.algorithms.Algorithm.HMAC512;
+import static com.example.demo.security.SecurityConstants.EXPIRATION_TIME;
+import static com.example.demo.security.SecurityConstants.HEADER_STRING;
+import static com.example.demo.security.SecurityConstants.SECRET;
+import static com.example.demo.security.SecurityConstants.TOKEN_PREFIX;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @RunWith(SpringRunner.class)
-@SpringBootTest
+@SpringBootTest(properties = "security.admin-users=catalog-admin")
 @AutoConfigureMockMvc
 public class ItemControllerTest {
     @MockBean
@@ -30,6 +49,17 @@ public class ItemControllerTest {
     @Autowired
     private ItemController itemController;
 
+    @Autowired
+    private ItemCatalog itemCatalog;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() {
+        itemCatalog.invalidate();
+    }
+
     @Test
     public void getItems() {
         Item firstItem = new Item();
@@ -41,8 +71,8 @@ public class ItemControllerTest {
 
         given(itemRepository.findAll()).willReturn(items);
 
-        ResponseEntity<List<Item>> response = itemController.getItems();
-        List<Item> responseBody = Objects.requireNonNull(response.getBody());
+        ResponseEntity<List<ItemView>> response = itemController.getItems();
+        List<ItemView> responseBody = Objects.requireNonNull(response.getBody());
 
         assertEquals(200, response.getStatusCode().value());
         assertEquals(2, responseBody.size());
@@ -57,8 +87,8 @@ public class ItemControllerTest {
 
         given(itemRepository.findById(itemId)).willReturn(Optional.of(item));
 
-        ResponseEntity<Item> response = itemController.getItemById(itemId);
-        Item responseBody = Objects.requireNonNull(response.getBody());
+        ResponseEntity<ItemView> response = itemController.getItemById(itemId);
+        ItemView responseBody = Objects.requireNonNull(response.getBody());
 
         assertEquals(200, response.getStatusCode().value());
         assertEquals(itemId, responseBody.getId().longValue());
@@ -70,7 +100,7 @@ public class ItemControllerTest {
 
         given(itemRepository.findByName(name)).willReturn(new ArrayList<>());
 
-        ResponseEntity<List<Item>> response = itemController.getItemsByName(name);
+        ResponseEntity<List<ItemView>> response = itemController.getItemsByName(name);
 
         assertEquals(404, response.getStatusCode().value());
     }
@@ -93,8 +123,8 @@ public class ItemControllerTest {
 
         given(itemRepository.findByName(name)).willReturn(items);
 
-        ResponseEntity<List<Item>> response = itemController.getItemsByName(name);
-        List<Item> body = Objects.requireNonNull(response.getBody());
+        ResponseEntity<List<ItemView>> response = itemController.getItemsByName(name);
+        List<ItemView> body = Objects.requireNonNull(response.getBody());
 
         assertEquals(200, response.getStatusCode().value());
         assertEquals(2, body.size());
@@ -103,4 +133,125 @@ public class ItemControllerTest {
         assertEquals(123L, body.get(0).getId().longValue());
         assertEquals(456L, body.get(1).getId().longValue());
     }
+
+    @Test
+    public void getItemByIdIsServedFromCache() {
+        Item item = new Item();
+        long itemId = 789L;
+
+        item.setId(itemId);
+
+        given(itemRepository.findById(itemId)).willReturn(Optional.of(item));
+
+        itemController.getItemById(itemId);
+        ResponseEntity<ItemView> response = itemController.getItemById(itemId);
+
+        assertEquals(200, response.getStatusCode().value());
+        verify(itemRepository, times(1)).findById(itemId);
+    }
+
+    @Test
+    public void saveInvalidatesCache() {
+        Item item = new Item();
+        long itemId = 987L;
+
+        item.setId(itemId);
+
+        given(itemRepository.findById(itemId)).willReturn(Optional.of(item));
+        given(itemRepository.save(item)).willReturn(item);
+
+        itemController.getItemById(itemId);
+        itemCatalog.save(item);
+        itemController.getItemById(itemId);
+
+        verify(itemRepository, times(2)).findById(itemId);
+    }
+
+    @Test
+    public void getItemPage() {
+        ArrayList<Item> items = new ArrayList<>();
+        for (long id = 11L; id <= 13L; id++) {
+            Item item = new Item();
+            item.setId(id);
+            items.add(item);
+        }
+
+        given(itemRepository.findByIdGreaterThanOrderByIdAsc(10L, PageRequest.of(0, 3))).willReturn(items);
+
+        ResponseEntity<ItemPage> response = itemController.getItemPage(10L, 2);
+        ItemPage body = Objects.requireNonNull(response.getBody());
+
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals(2, body.getItems().size());
+        assertEquals(12L, body.getNextCursor().longValue());
+    }
+
+    @Test
+    public void getLastItemPage() {
+        Item item = new Item();
+        item.setId(11L);
+
+        ArrayList<Item> items = new ArrayList<>();
+        items.add(item);
+
+        given(itemRepository.findByIdGreaterThanOrderByIdAsc(10L, PageRequest.of(0, 3))).willReturn(items);
+
+        ResponseEntity<ItemPage> response = itemController.getItemPage(10L, 2);
+        ItemPage body = Objects.requireNonNull(response.getBody());
+
+        assertEquals(1, body.getItems().size());
+        assertNull(body.getNextCursor());
+    }
+
+    @Test
+    public void searchItems() {
+        Item roundWidget = new Item();
+        roundWidget.setId(1L);
+        roundWidget.setName("Round Widget");
+        roundWidget.setDescription("A widget that is round");
+
+        Item squareWidget = new Item();
+        squareWidget.setId(2L);
+        squareWidget.setName("Square Widget");
+        squareWidget.setDescription("A widget that is square, not round");
+
+        given(itemRepository.save(roundWidget)).willReturn(roundWidget);
+        given(itemRepository.save(squareWidget)).willReturn(squareWidget);
+
+        itemCatalog.save(roundWidget);
+        itemCatalog.save(squareWidget);
+
+        List<ItemView> prefixMatches = Objects.requireNonNull(itemController.searchItems("wid", 10).getBody());
+        assertEquals(2, prefixMatches.size());
+
+        List<ItemView> roundMatches = Objects.requireNonNull(itemController.searchItems("round", 10).getBody());
+        assertEquals(2, roundMatches.size());
+        assertEquals(1L, roundMatches.get(0).getId().longValue());
+
+        List<ItemView> noMatches = Objects.requireNonNull(itemController.searchItems("square gadget", 10).getBody());
+        assertEquals(0, noMatches.size());
+    }
+
+    @Test
+    public void importIsForbiddenForOrdinaryUsers() throws Exception {
+        mockMvc.perform(post("/api/item/import").header(HEADER_STRING, token("shopper"))
+                .contentType("text/csv").content("name,price,description\nCheap Widget,0.01,Now cheap\n"))
+                .andExpect(status().isForbidden());
+
+        verify(itemRepository, times(0)).saveAll(anyList());
+    }
+
+    @Test
+    public void importIsAllowedForAdmins() throws Exception {
+        mockMvc.perform(post("/api/item/import").header(HEADER_STRING, token("catalog-admin"))
+                .contentType("text/csv").content("name,price,description\nCheap Widget,0.01,Now cheap\n"))
+                .andExpect(status().isOk());
+    }
+
+    private static String token(String username) {
+        return TOKEN_PREFIX + JWT.create()
+                .withSubject(username)
+                .withExpiresAt(new Date(System.currentTimeMillis() + EXPIRATION_TIME))
+                .sign(HMAC512(SECRET.getBytes()));
+    }
 }
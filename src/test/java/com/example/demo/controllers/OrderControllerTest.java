@@ -5,25 +5,35 @@ import com.example.demo.model.persistence.Cart;
 import com.example.demo.model.persistence.Item;
 import com.example.demo.model.persistence.User;
 import com.example.demo.model.persistence.UserOrder;
+import com.example.demo.services.UserCache;
+import com.example.demo.model.persistence.repositories.CartRepository;
 import com.example.demo.model.persistence.repositories.OrderRepository;
+import com.example.demo.model.responses.OrderHistoryPage;
+import com.example.demo.model.responses.OrderSummary;
+import com.example.demo.model.responses.OrderView;
 import com.example.demo.model.persistence.repositories.UserRepository;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.ArrayList;
-import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -37,15 +47,26 @@ public class OrderControllerTest {
     @MockBean
     private OrderRepository orderRepository;
 
+    @MockBean
+    private CartRepository cartRepository;
+
     @Autowired
     private OrderController orderController;
 
+    @Autowired
+    private UserCache userCache;
+
+    @Before
+    public void setUp() {
+        userCache.invalidateAll();
+    }
+
     @Test
     public void submitWithUserNotFound() {
         String username = "some_username";
         given(userRepository.findByUsername(username)).willReturn(null);
 
-        ResponseEntity<UserOrder> response = orderController.submit(username);
+        ResponseEntity<OrderView> response = orderController.submit(username, null);
 
         assertEquals(404, response.getStatusCode().value());
     }
@@ -65,20 +86,51 @@ public class OrderControllerTest {
         cart.addItem(item);
         cart.addItem(item);
         cart.setTotal(BigDecimal.valueOf(642));
+        cart.setId(654L);
         user.setCart(cart);
 
         given(userRepository.findByUsername(username)).willReturn(user);
+        given(cartRepository.findById(654L)).willReturn(Optional.of(cart));
 
 
-        ResponseEntity<UserOrder> response = orderController.submit(username);
-        UserOrder body = Objects.requireNonNull(response.getBody());
+        ResponseEntity<OrderView> response = orderController.submit(username, null);
+        OrderView body = Objects.requireNonNull(response.getBody());
 
-        verify(orderRepository, times(1)).save(any());
+        verify(orderRepository, times(1)).saveAndFlush(any());
+        verify(cartRepository, times(1)).saveAndFlush(cart);
 
         assertEquals(200, response.getStatusCode().value());
-        assertEquals(BigDecimal.valueOf(642), body.getTotal());
-        assertEquals(2, body.getItems().size());
-        assertEquals(321L, body.getItems().get(0).getId().longValue());
+        assertEquals(BigDecimal.valueOf(64200, 2), body.getTotal());
+        assertEquals(1, body.getItems().size());
+        assertEquals(2, body.getItems().get(0).getQuantity());
+        assertEquals(321L, body.getItems().get(0).getItemId().longValue());
+        assertEquals(BigDecimal.valueOf(321), body.getItems().get(0).getUnitPrice());
+
+        assertEquals(0, cart.getItems().size());
+        assertEquals(0, BigDecimal.ZERO.compareTo(cart.getTotal()));
+    }
+
+    @Test
+    public void submitWithKnownIdempotencyKey() {
+        String username = "retrying_username";
+        String idempotencyKey = "some_key";
+
+        User user = new User();
+        user.setId(789L);
+        user.setUsername(username);
+
+        UserOrder existing = new UserOrder();
+        existing.setId(987L);
+
+        given(userRepository.findByUsername(username)).willReturn(user);
+        given(orderRepository.findByUserIdAndIdempotencyKey(789L, idempotencyKey)).willReturn(Optional.of(existing));
+
+        ResponseEntity<OrderView> response = orderController.submit(username, idempotencyKey);
+        OrderView body = Objects.requireNonNull(response.getBody());
+
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals(987L, body.getId().longValue());
+        verify(orderRepository, never()).saveAndFlush(any());
     }
 
     @Test
@@ -86,7 +138,7 @@ public class OrderControllerTest {
         String username = "some_username";
         given(userRepository.findByUsername(username)).willReturn(null);
 
-        ResponseEntity<List<UserOrder>> response = orderController.getOrdersForUser(username);
+        ResponseEntity<OrderHistoryPage> response = orderController.getOrdersForUser(username, null, 20);
 
         assertEquals(404, response.getStatusCode().value());
     }
@@ -94,23 +146,67 @@ public class OrderControllerTest {
     @Test
     public void history() {
         String username = "another_username";
-        UserOrder order = new UserOrder();
-        order.setId(123L);
+        OrderSummary order = new OrderSummary(123L, BigDecimal.valueOf(642), 2L, Instant.now());
 
         User user = new User();
+        user.setId(456L);
         user.setUsername(username);
 
-        ArrayList<UserOrder> orders = new ArrayList<>();
+        ArrayList<OrderSummary> orders = new ArrayList<>();
         orders.add(order);
 
         given(userRepository.findByUsername(username)).willReturn(user);
-        given(orderRepository.findByUser(user)).willReturn(orders);
+        given(orderRepository.findSummariesByUserId(456L, Long.MAX_VALUE, PageRequest.of(0, 21))).willReturn(orders);
+
+        ResponseEntity<OrderHistoryPage> response = orderController.getOrdersForUser(username, null, 20);
+        OrderHistoryPage responseBody = Objects.requireNonNull(response.getBody());
+
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals(1, responseBody.getOrders().size());
+        assertEquals(123L, responseBody.getOrders().get(0).getId().longValue());
+        assertEquals(2L, responseBody.getOrders().get(0).getItemCount());
+        assertNull(responseBody.getNextCursor());
+    }
+
+    @Test
+    public void historyWithNextPage() {
+        String username = "frequent_username";
+
+        User user = new User();
+        user.setId(456L);
+        user.setUsername(username);
+
+        ArrayList<OrderSummary> orders = new ArrayList<>();
+        orders.add(new OrderSummary(99L, BigDecimal.ONE, 1L, Instant.now()));
+        orders.add(new OrderSummary(98L, BigDecimal.ONE, 1L, Instant.now()));
+
+        given(userRepository.findByUsername(username)).willReturn(user);
+        given(orderRepository.findSummariesByUserId(456L, 100L, PageRequest.of(0, 2))).willReturn(orders);
+
+        ResponseEntity<OrderHistoryPage> response = orderController.getOrdersForUser(username, 100L, 1);
+        OrderHistoryPage responseBody = Objects.requireNonNull(response.getBody());
+
+        assertEquals(1, responseBody.getOrders().size());
+        assertEquals(99L, responseBody.getNextCursor().longValue());
+    }
+
+    @Test
+    public void getOrder() {
+        String username = "another_username";
+        UserOrder order = new UserOrder();
+        order.setId(123L);
+
+        User user = new User();
+        user.setId(456L);
+        user.setUsername(username);
+
+        given(userRepository.findByUsername(username)).willReturn(user);
+        given(orderRepository.findWithItemsByIdAndUserId(123L, 456L)).willReturn(Optional.of(order));
 
-        ResponseEntity<List<UserOrder>> response = orderController.getOrdersForUser(username);
-        List<UserOrder> responseBody = Objects.requireNonNull(response.getBody());
+        ResponseEntity<OrderView> response = orderController.getOrder(username, 123L);
 
         assertEquals(200, response.getStatusCode().value());
-        assertEquals(1, responseBody.size());
-        assertEquals(123L, responseBody.get(0).getId().longValue());
+        assertEquals(123L, Objects.requireNonNull(response.getBody()).getId().longValue());
+        assertEquals(404, orderController.getOrder(username, 321L).getStatusCode().value());
     }
 }
@@ -2,15 +2,20 @@ package com.example.demo.controllers;
 
 import com.example.demo.controllers.UserController;
 import com.example.demo.model.persistence.User;
+import com.example.demo.model.responses.UserView;
 import com.example.demo.model.persistence.repositories.CartRepository;
 import com.example.demo.model.persistence.repositories.UserRepository;
 import com.example.demo.model.requests.CreateUserRequest;
+import com.example.demo.services.UserCache;
+import com.example.demo.services.UsernameFilter;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.test.context.junit4.SpringRunner;
@@ -19,7 +24,11 @@ import java.util.Objects;
 import java.util.Optional;
 
 import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest
@@ -37,6 +46,17 @@ public class UserControllerTest {
     @Autowired
     private UserController userController;
 
+    @Autowired
+    private UserCache userCache;
+
+    @Autowired
+    private UsernameFilter usernameFilter;
+
+    @Before
+    public void setUp() {
+        userCache.invalidateAll();
+    }
+
     @Test
     public void findById() {
         String username = "some_username";
@@ -46,8 +66,8 @@ public class UserControllerTest {
         user.setUsername(username);
         given(userRepository.findById(userId)).willReturn(Optional.of(user));
 
-        ResponseEntity<User> response = userController.findById(123L);
-        User responseBody = Objects.requireNonNull(response.getBody());
+        ResponseEntity<UserView> response = userController.findById(123L);
+        UserView responseBody = Objects.requireNonNull(response.getBody());
 
         assertEquals(200, response.getStatusCode().value());
         assertEquals(username, responseBody.getUsername());
@@ -59,7 +79,7 @@ public class UserControllerTest {
         String username = "another_username";
 
         given(userRepository.findByUsername(username)).willReturn(null);
-        ResponseEntity<User> response = userController.findByUserName(username);
+        ResponseEntity<UserView> response = userController.findByUserName(username);
 
         assertEquals(404, response.getStatusCode().value());
     }
@@ -73,8 +93,8 @@ public class UserControllerTest {
         user.setUsername(username);
 
         given(userRepository.findByUsername(username)).willReturn(user);
-        ResponseEntity<User> response = userController.findByUserName(username);
-        User responseBody = Objects.requireNonNull(response.getBody());
+        ResponseEntity<UserView> response = userController.findByUserName(username);
+        UserView responseBody = Objects.requireNonNull(response.getBody());
 
         assertEquals(200, response.getStatusCode().value());
         assertEquals(username, responseBody.getUsername());
@@ -86,7 +106,7 @@ public class UserControllerTest {
         CreateUserRequest request = new CreateUserRequest();
         request.setPassword("short");
 
-        ResponseEntity<User> response = userController.createUser(request);
+        ResponseEntity<UserView> response = userController.createUser(request).join();
 
         assertEquals(400, response.getStatusCode().value());
     }
@@ -97,7 +117,7 @@ public class UserControllerTest {
         request.setPassword("first_password");
         request.setConfirmPassword("second_password");
 
-        ResponseEntity<User> response = userController.createUser(request);
+        ResponseEntity<UserView> response = userController.createUser(request).join();
 
         assertEquals(400, response.getStatusCode().value());
     }
@@ -111,10 +131,45 @@ public class UserControllerTest {
         request.setConfirmPassword("some_valid_password");
         request.setUsername(username);
 
-        ResponseEntity<User> response = userController.createUser(request);
-        User responseBody = Objects.requireNonNull(response.getBody());
+        ResponseEntity<UserView> response = userController.createUser(request).join();
+        UserView responseBody = Objects.requireNonNull(response.getBody());
 
         assertEquals(200, response.getStatusCode().value());
         assertEquals(username, responseBody.getUsername());
+        verify(userRepository, times(1)).save(any());
+    }
+
+    @Test
+    public void createUserWithTakenName() {
+        String username = "taken_username";
+        User user = new User();
+        user.setUsername(username);
+        given(userRepository.findByUsername(username)).willReturn(user);
+        usernameFilter.add(username);
+
+        CreateUserRequest request = new CreateUserRequest();
+        request.setPassword("some_valid_password");
+        request.setConfirmPassword("some_valid_password");
+        request.setUsername(username);
+
+        ResponseEntity<UserView> response = userController.createUser(request).join();
+
+        assertEquals(409, response.getStatusCode().value());
+        verify(bCryptPasswordEncoder, never()).encode(any());
+        verify(userRepository, never()).save(any());
+    }
+
+    @Test
+    public void createUserWithNameTakenConcurrently() {
+        given(userRepository.save(any())).willThrow(new DataIntegrityViolationException("uk_user_username"));
+
+        CreateUserRequest request = new CreateUserRequest();
+        request.setPassword("some_valid_password");
+        request.setConfirmPassword("some_valid_password");
+        request.setUsername("racing_username");
+
+        ResponseEntity<UserView> response = userController.createUser(request).join();
+
+        assertEquals(409, response.getStatusCode().value());
     }
 }
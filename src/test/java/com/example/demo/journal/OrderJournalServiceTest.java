@@ -0,0 +1,202 @@
+package com.example.demo.journal;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.persistence.repositories.OrderRepository;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.responses.OrderHistoryPage;
+import com.example.demo.model.responses.OrderView;
+import com.example.demo.services.CartService;
+import com.example.demo.services.OrderService;
+import com.example.demo.services.UserSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"orders.journal.enabled=true", "orders.journal.directory=target/order-journal-test",
+        "orders.journal.projection-poll-millis=10"})
+public class OrderJournalServiceTest {
+    @Autowired
+    private OrderService orderService;
+
+    @SpyBean
+    private CartService cartService;
+
+    @SpyBean
+    private OrderJournalService orderJournal;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    private UserSummary user;
+
+    private Item item;
+
+    @BeforeClass
+    public static void clearJournal() {
+        // records from an earlier run would refer to users of another in-memory database
+        FileSystemUtils.deleteRecursively(new File("target/order-journal-test"));
+    }
+
+    @Before
+    public void setUp() {
+        user = new TransactionTemplate(transactionManager).execute(status -> {
+            Cart cart = cartRepository.save(new Cart());
+            User newUser = new User();
+            newUser.setUsername("journal-" + UUID.randomUUID());
+            newUser.setPassword("hash");
+            newUser.setCart(cart);
+            return UserSummary.of(userRepository.save(newUser));
+        });
+        item = itemRepository.findById(1L).get();
+    }
+
+    @Test
+    public void submittedOrderIsServedUntilItIsProjected() throws InterruptedException {
+        cartService.addItem(user, item, 3);
+
+        OrderView order = orderService.submit(user, "journal-key").get();
+
+        assertEquals(1, order.getItems().size());
+        assertEquals(item.getPrice().multiply(BigDecimal.valueOf(3)), order.getTotal());
+        assertEquals(order.getId(), orderService.findOrder(user, order.getId()).get().getId());
+        assertEquals(order.getId(), orderService.submit(user, "journal-key").get().getId());
+        assertTrue(cartRepository.findWithItemsById(user.getCartId()).get().getItems().isEmpty());
+
+        awaitProjected(order.getId());
+        OrderView projected = orderService.findOrder(user, order.getId()).get();
+        assertEquals(order.getTotal(), projected.getTotal());
+        assertEquals(3, projected.getItems().get(0).getQuantity());
+        assertEquals(order.getId(), orderService.submit(user, "journal-key").get().getId());
+    }
+
+    @Test
+    public void historyListsPendingAndProjectedOrdersOnce() throws InterruptedException {
+        cartService.addItem(user, item, 1);
+        OrderView first = orderService.submit(user, null).get();
+        awaitProjected(first.getId());
+        cartService.addItem(user, item, 2);
+        OrderView second = orderService.submit(user, null).get();
+
+        OrderHistoryPage history = orderService.findHistory(user, Long.MAX_VALUE, 10);
+
+        assertEquals(2, history.getOrders().size());
+        assertEquals(second.getId(), history.getOrders().get(0).getId());
+        assertEquals(first.getId(), history.getOrders().get(1).getId());
+        assertEquals(2, history.getOrders().get(0).getItemCount());
+    }
+
+    @Test
+    public void cartChangedDuringSubmitIsNotJournaled() throws Exception {
+        cartService.addItem(user, item, 1);
+        double appends = registry.get("orders.journal.appends").functionCounter().count();
+
+        doAnswer(invocation -> {
+            // the submission goes on with this copy of the cart, which is then outdated
+            Object cart = invocation.callRealMethod();
+            changeCartConcurrently();
+            return cart;
+        }).doCallRealMethod().when(cartService).findForCheckout(any());
+        try {
+            orderService.submit(user, "conflict-key");
+            fail("expected the outdated cart to fail the submission");
+        } catch (ConcurrencyFailureException expected) {
+            // the controller answers 409 and the client retries
+        }
+
+        assertEquals(appends, registry.get("orders.journal.appends").functionCounter().count(), 0);
+        assertFalse(orderService.findByIdempotencyKey(user, "conflict-key").isPresent());
+        assertEquals(3, cartRepository.findWithItemsById(user.getCartId()).get().getItems().get(0).getQuantity());
+
+        OrderView retried = orderService.submit(user, "conflict-key").get();
+        assertEquals(3, retried.getItems().get(0).getQuantity());
+    }
+
+    @Test
+    public void cartIsRestoredWhenTheAppendFails() {
+        cartService.addItem(user, item, 2);
+        doThrow(new IllegalStateException("Order could not be written to the journal"))
+                .when(orderJournal).append(anyLong(), any());
+
+        try {
+            orderService.submit(user, "failed-key");
+            fail("expected the failed append to fail the submission");
+        } catch (IllegalStateException expected) {
+            // the client retries
+        }
+
+        assertFalse(orderService.findByIdempotencyKey(user, "failed-key").isPresent());
+        assertEquals(2, cartRepository.findWithItemsById(user.getCartId()).get().getItems().get(0).getQuantity());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void submittingInsideATransactionIsRejected() {
+        cartService.addItem(user, item, 1);
+
+        // the emptied cart could not be committed before the order is journaled
+        new TransactionTemplate(transactionManager).execute(status -> orderService.submit(user, null));
+    }
+
+    private void changeCartConcurrently() {
+        ExecutorService other = Executors.newSingleThreadExecutor();
+        try {
+            other.submit(() -> cartService.addItem(user, item, 2)).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            other.shutdown();
+        }
+    }
+
+    private void awaitProjected(long orderId) throws InterruptedException {
+        for (int i = 0; i < 500 && !orderRepository.existsById(orderId); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(orderRepository.existsById(orderId));
+    }
+}
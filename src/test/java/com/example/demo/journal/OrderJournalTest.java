@@ -0,0 +1,148 @@
+package com.example.demo.journal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OrderJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recordsAreReadBackAcrossSegments() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        OrderJournal journal = new OrderJournal(directory, 64);
+        List<String> written = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            String record = "order-" + i + "-" + repeat('x', i * 3);
+            written.add(record);
+            journal.append(bytes(record)).get();
+        }
+
+        assertEquals(written, readAll(journal.reader(0)));
+        assertTrue(segmentCount(directory) > 1);
+        journal.close();
+    }
+
+    @Test
+    public void concurrentAppendsShareFlushes() throws Exception {
+        OrderJournal journal = new OrderJournal(folder.getRoot().toPath(), 1 << 20);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Long>> positions = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            String record = "order-" + i;
+            positions.add(pool.submit(() -> {
+                start.await();
+                return journal.append(bytes(record)).get();
+            }));
+        }
+        start.countDown();
+        for (Future<Long> position : positions) {
+            assertTrue(position.get() <= journal.getDurablePosition());
+        }
+        pool.shutdown();
+
+        assertEquals(400, journal.getAppends());
+        assertTrue(journal.getForces() <= journal.getAppends());
+        assertEquals(400, readAll(journal.reader(0)).size());
+        journal.close();
+    }
+
+    @Test
+    public void reopeningCutsOffATornTail() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        OrderJournal journal = new OrderJournal(directory, 4096);
+        journal.append(bytes("first")).get();
+        long end = journal.append(bytes("second")).get();
+        journal.close();
+        // a third record whose payload never made it to disk
+        try (RandomAccessFile segment = new RandomAccessFile(directory.resolve(segmentName(0)).toFile(), "rw")) {
+            segment.seek(end);
+            segment.writeInt(5);
+            segment.writeInt(12345);
+        }
+
+        OrderJournal reopened = new OrderJournal(directory, 4096);
+        OrderJournal.Reader reader = reopened.reader(0);
+        assertEquals("first", new String(reader.next(), StandardCharsets.UTF_8));
+        assertEquals("second", new String(reader.next(), StandardCharsets.UTF_8));
+        assertNull(reader.next());
+
+        reopened.append(bytes("third")).get();
+        assertEquals("third", new String(reader.next(), StandardCharsets.UTF_8));
+        reopened.close();
+    }
+
+    @Test
+    public void projectedSegmentsCanBeDeleted() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        OrderJournal journal = new OrderJournal(directory, 64);
+        for (int i = 0; i < 10; i++) {
+            journal.append(bytes("order-" + i + "-padding-padding")).get();
+        }
+        OrderJournal.Reader reader = journal.reader(0);
+        for (int i = 0; i < 6; i++) {
+            reader.next();
+        }
+        long checkpoint = reader.getPosition();
+        journal.deleteSegmentsBefore(checkpoint);
+        journal.close();
+
+        OrderJournal reopened = new OrderJournal(directory, 64);
+        List<String> remaining = readAll(reopened.reader(checkpoint));
+        assertEquals("order-6-padding-padding", remaining.get(0));
+        assertEquals(4, remaining.size());
+        // the segment holding the checkpoint is kept whole
+        assertEquals("order-4-padding-padding", readAll(reopened.reader(0)).get(0));
+        reopened.close();
+    }
+
+    private static List<String> readAll(OrderJournal.Reader reader) {
+        List<String> records = new ArrayList<>();
+        for (byte[] record = reader.next(); record != null; record = reader.next()) {
+            records.add(new String(record, StandardCharsets.UTF_8));
+        }
+        return records;
+    }
+
+    private static long segmentCount(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.collect(Collectors.toList()).size();
+        }
+    }
+
+    private static String segmentName(long index) {
+        return String.format("%020d.journal", index);
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.demo.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BatchingTcpAppenderTest {
+    private LoggerContext context;
+    private BatchingTcpAppender appender;
+
+    @Before
+    public void setUp() {
+        context = new LoggerContext();
+
+        PatternLayout layout = new PatternLayout();
+        layout.setContext(context);
+        layout.setPattern("%msg%n");
+        layout.start();
+
+        appender = new BatchingTcpAppender();
+        appender.setContext(context);
+        appender.setName("test");
+        appender.setLayout(layout);
+        appender.setReconnectDelayMillis(50);
+        appender.setFlushIntervalMillis(20);
+    }
+
+    @After
+    public void tearDown() {
+        appender.stop();
+    }
+
+    @Test
+    public void shipsEventsToCollector() throws Exception {
+        try (ServerSocket collector = new ServerSocket(0)) {
+            appender.setPort(collector.getLocalPort());
+            appender.setBatchSize(16);
+            appender.start();
+
+            for (int i = 0; i < 100; i++) {
+                appender.doAppend(event("line " + i));
+            }
+
+            List<String> received = new ArrayList<>();
+            try (Socket connection = collector.accept();
+                 BufferedReader reader = new BufferedReader(
+                         new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+                while (received.size() < 100) {
+                    received.add(reader.readLine());
+                }
+            }
+
+            assertEquals("line 0", received.get(0));
+            assertEquals("line 99", received.get(99));
+            assertEquals(0, appender.getDroppedEvents());
+        }
+    }
+
+    @Test
+    public void dropsInsteadOfBlockingWhenCollectorIsDown() throws Exception {
+        int unusedPort;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            unusedPort = probe.getLocalPort();
+        }
+        appender.setPort(unusedPort);
+        appender.setQueueSize(16);
+        appender.start();
+
+        long started = System.nanoTime();
+        for (int i = 0; i < 10_000; i++) {
+            appender.doAppend(event("line " + i));
+        }
+        long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+
+        assertTrue(appender.getDroppedEvents() >= 10_000 - 16);
+        assertTrue("appending took " + elapsedMillis + "ms", elapsedMillis < 1000);
+    }
+
+    private LoggingEvent event(String message) {
+        LoggingEvent event = new LoggingEvent();
+        event.setLoggerContextRemoteView(context.getLoggerContextRemoteView());
+        event.setLevel(Level.INFO);
+        event.setLoggerName("test");
+        event.setMessage(message);
+        event.setThreadName(Thread.currentThread().getName());
+        event.setTimeStamp(System.currentTimeMillis());
+        return event;
+    }
+}
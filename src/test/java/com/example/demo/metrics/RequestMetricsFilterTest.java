@@ -0,0 +1,115 @@
+package com.example.demo.metrics;
+
+import com.auth0.jwt.JWT;
+import com.example.demo.services.ItemCatalog;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.Date;
+import java.util.UUID;
+
+import static com.auth0.jwt.algorithms.Algorithm.HMAC512;
+import static com.example.demo.security.SecurityConstants.EXPIRATION_TIME;
+import static com.example.demo.security.SecurityConstants.HEADER_STRING;
+import static com.example.demo.security.SecurityConstants.SECRET;
+import static com.example.demo.security.SecurityConstants.TOKEN_PREFIX;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {"metrics.query-budget=0", "api.async.enabled=true"})
+@AutoConfigureMockMvc
+public class RequestMetricsFilterTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Autowired
+    private ItemCatalog itemCatalog;
+
+    private String token;
+
+    @Before
+    public void setUp() {
+        itemCatalog.invalidate();
+        token = TOKEN_PREFIX + JWT.create()
+                .withSubject("metrics")
+                .withExpiresAt(new Date(System.currentTimeMillis() + EXPIRATION_TIME))
+                .sign(HMAC512(SECRET.getBytes()));
+    }
+
+    @Test
+    public void recordsQueriesPerEndpoint() throws Exception {
+        mockMvc.perform(get("/api/item/1").header(HEADER_STRING, token)).andExpect(status().isOk());
+
+        DistributionSummary queries = registry.get("http.server.requests.queries")
+                .tags("method", "GET", "uri", "/api/item/{id}")
+                .summary();
+        assertEquals(1, queries.count());
+        assertEquals(1.0, queries.totalAmount(), 0.0);
+
+        // the second request is served from the item cache
+        mockMvc.perform(get("/api/item/1").header(HEADER_STRING, token)).andExpect(status().isOk());
+        assertEquals(2, queries.count());
+        assertEquals(1.0, queries.totalAmount(), 0.0);
+    }
+
+    @Test
+    public void recordsAsyncRequestsWhenTheyComplete() throws Exception {
+        MvcResult started = mockMvc.perform(get("/api/async/item/2").header(HEADER_STRING, token))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(started)).andExpect(status().isOk());
+
+        DistributionSummary queries = registry.get("http.server.requests.queries")
+                .tags("method", "GET", "uri", "/api/async/item/{id}")
+                .summary();
+        assertEquals(1, queries.count());
+        assertEquals(1.0, queries.totalAmount(), 0.0);
+    }
+
+    @Test
+    public void countsStatementsOfStagesOnTheHashingPool() throws Exception {
+        String body = "{\"username\":\"metrics-" + UUID.randomUUID() + "\","
+                + "\"password\":\"password1\",\"confirmPassword\":\"password1\"}";
+        MvcResult started = mockMvc.perform(post("/api/user/create").contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(started)).andExpect(status().isOk());
+
+        DistributionSummary queries = registry.get("http.server.requests.queries")
+                .tags("method", "POST", "uri", "/api/user/create")
+                .summary();
+        assertEquals(1, queries.count());
+        // the user and cart inserts run after hashing, on the hashing pool
+        assertTrue(queries.totalAmount() >= 2);
+    }
+
+    @Test
+    public void countsRequestsOverTheQueryBudget() throws Exception {
+        mockMvc.perform(get("/api/item/name/Round Widget").header(HEADER_STRING, token)).andExpect(status().isOk());
+
+        double exceeded = registry.get("http.server.requests.query-budget.exceeded")
+                .tags("method", "GET", "uri", "/api/item/name/{name}")
+                .counter()
+                .count();
+        assertTrue(exceeded >= 1);
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.demo.migrations;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:cart-total-migration;DB_CLOSE_DELAY=-1")
+public class CartTotalMigrationTest {
+    @Autowired
+    private CartTotalMigration cartTotalMigration;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void newCartColumnsCanBeAddedToAPopulatedTable() {
+        assertEquals("0", columnDefault("TOTAL_CENTS"));
+        assertEquals("0", columnDefault("VERSION"));
+    }
+
+    @Test
+    public void legacyCartTotalsAreComputedFromTheirLineItems() {
+        Cart filled = new Cart();
+        filled.addItem(item("1.50"), 3);
+        filled.addItem(item("0.99"), 2);
+        long filledId = cartRepository.save(filled).getId();
+        long emptyId = cartRepository.save(new Cart()).getId();
+
+        // the table as left behind by the BigDecimal total: schema update added total_cents with its default
+        jdbcTemplate.execute("alter table cart add column total decimal(19,2)");
+        jdbcTemplate.update("update cart set total_cents = 0, total = 12.34");
+
+        cartTotalMigration.run(null);
+
+        assertEquals(648L, totalCents(filledId));
+        assertEquals(0L, totalCents(emptyId));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "select count(*) from information_schema.columns " +
+                "where table_name = 'CART' and column_name = 'TOTAL'", Integer.class).intValue());
+    }
+
+    private Item item(String price) {
+        Item item = new Item();
+        item.setName("Migrated " + price);
+        item.setDescription("Priced at " + price);
+        item.setPrice(new BigDecimal(price));
+        return itemRepository.save(item);
+    }
+
+    private String columnDefault(String column) {
+        return jdbcTemplate.queryForObject("select column_default from information_schema.columns " +
+                "where table_name = 'CART' and column_name = ?", String.class, column);
+    }
+
+    private long totalCents(long cartId) {
+        return jdbcTemplate.queryForObject("select total_cents from cart where id = ?", Long.class, cartId);
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.demo.security;
+
+import com.example.demo.server.RequestExecutionCustomizer;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class PasswordHashingExecutorTest {
+
+    @Test
+    public void executeReturnsResult() {
+        PasswordHashingExecutor executor = executor(1, 1);
+
+        assertEquals("hashed", executor.execute(() -> "hashed"));
+
+        executor.destroy();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void executeRethrowsTaskException() {
+        PasswordHashingExecutor executor = executor(1, 1);
+
+        try {
+            executor.execute(() -> {
+                throw new IllegalArgumentException("bad credentials");
+            });
+        } finally {
+            executor.destroy();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void loginsMayNotBlockMostConnectorThreads() {
+        new PasswordHashingExecutor(4, 97, 1, 200, RequestExecutionCustomizer.Mode.PLATFORM);
+    }
+
+    @Test
+    public void virtualRequestThreadsAreNotLimitedByTheConnectorPool() {
+        new PasswordHashingExecutor(4, 97, 1, 200, RequestExecutionCustomizer.Mode.VIRTUAL).destroy();
+    }
+
+    @Test
+    public void executeRejectsWhenQueueIsFull() throws Exception {
+        PasswordHashingExecutor executor = executor(1, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Thread busy = new Thread(() -> executor.execute(() -> {
+            started.countDown();
+            release.await();
+            return null;
+        }));
+        busy.start();
+        started.await();
+        Thread queued = new Thread(() -> executor.execute(() -> null));
+        queued.start();
+        while (executor.getQueuedTasks() == 0) {
+            Thread.sleep(1);
+        }
+
+        RejectedExecutionException rejection = null;
+        try {
+            executor.execute(() -> null);
+        } catch (RejectedExecutionException e) {
+            rejection = e;
+        }
+
+        release.countDown();
+        busy.join();
+        queued.join();
+        executor.destroy();
+
+        assertNotNull(rejection);
+    }
+
+    private static PasswordHashingExecutor executor(int threads, int queueCapacity) {
+        return new PasswordHashingExecutor(threads, queueCapacity, 1, 200, RequestExecutionCustomizer.Mode.PLATFORM);
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.demo.security;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UpgradingBCryptPasswordEncoderTest {
+
+    @Test
+    public void upgradeEncodingForWeakerHash() {
+        String weakHash = new UpgradingBCryptPasswordEncoder(4).encode("some_password");
+
+        assertTrue(new UpgradingBCryptPasswordEncoder(5).upgradeEncoding(weakHash));
+    }
+
+    @Test
+    public void noUpgradeForCurrentStrength() {
+        UpgradingBCryptPasswordEncoder encoder = new UpgradingBCryptPasswordEncoder(4);
+
+        assertFalse(encoder.upgradeEncoding(encoder.encode("some_password")));
+        assertFalse(encoder.upgradeEncoding(null));
+    }
+}
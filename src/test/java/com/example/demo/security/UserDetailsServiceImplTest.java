@@ -2,6 +2,8 @@ package com.example.demo.security;
 
 import com.example.demo.model.persistence.User;
 import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.services.UserCache;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,6 +17,8 @@ import org.springframework.test.context.junit4.SpringRunner;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest
@@ -27,6 +31,14 @@ public class UserDetailsServiceImplTest {
     @Autowired
     private UserDetailsServiceImpl userDetailsService;
 
+    @Autowired
+    private UserCache userCache;
+
+    @Before
+    public void setUp() {
+        userCache.invalidateAll();
+    }
+
     @Test
     public void loadByUsernameWithUserNotFound() {
         String username = "some_username";
@@ -57,4 +69,53 @@ public class UserDetailsServiceImplTest {
         assertEquals(details.getUsername(), user.getUsername());
         assertEquals(details.getPassword(), user.getPassword());
     }
+
+    @Test
+    public void updatePassword() {
+        String username = "upgraded_username";
+
+        User user = new User();
+        user.setUsername(username);
+        user.setPassword("old_hash");
+
+        given(applicationUserRepository.findByUsername(username)).willReturn(user);
+        UserDetails details = userDetailsService.loadUserByUsername(username);
+        UserDetails updated = userDetailsService.updatePassword(details, "new_hash");
+
+        assertEquals("new_hash", updated.getPassword());
+        assertEquals("new_hash", user.getPassword());
+        verify(applicationUserRepository).save(user);
+    }
+
+    @Test
+    public void loadByUsernameCachesUnknownUser() {
+        String username = "unknown_username";
+        given(applicationUserRepository.findByUsername(username)).willReturn(null);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                userDetailsService.loadUserByUsername(username);
+            } catch (UsernameNotFoundException e) {
+                // expected
+            }
+        }
+
+        verify(applicationUserRepository, times(1)).findByUsername(username);
+    }
+
+    @Test
+    public void loadByUsernameCachesUser() {
+        String username = "cached_username";
+
+        User user = new User();
+        user.setUsername(username);
+        user.setPassword("random_password");
+
+        given(applicationUserRepository.findByUsername(username)).willReturn(user);
+        userDetailsService.loadUserByUsername(username);
+        UserDetails details = userDetailsService.loadUserByUsername(username);
+
+        assertEquals(username, details.getUsername());
+        verify(applicationUserRepository, times(1)).findByUsername(username);
+    }
 }
@@ -0,0 +1,58 @@
+package com.example.demo.security;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Date;
+
+import static com.auth0.jwt.algorithms.Algorithm.HMAC512;
+import static com.example.demo.security.SecurityConstants.EXPIRATION_TIME;
+import static com.example.demo.security.SecurityConstants.SECRET;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class VerifiedTokenCacheTest {
+
+    @Autowired
+    private VerifiedTokenCache verifiedTokenCache;
+
+    @Test
+    public void verifyCachesValidToken() {
+        String token = JWT.create()
+                .withSubject("cached_username")
+                .withExpiresAt(new Date(System.currentTimeMillis() + EXPIRATION_TIME))
+                .sign(HMAC512(SECRET.getBytes()));
+        long hits = verifiedTokenCache.stats().hitCount();
+
+        assertEquals("cached_username", verifiedTokenCache.verify(token));
+        assertEquals("cached_username", verifiedTokenCache.verify(token));
+
+        assertEquals(hits + 1, verifiedTokenCache.stats().hitCount());
+    }
+
+    @Test(expected = JWTVerificationException.class)
+    public void verifyRejectsForeignSignature() {
+        String token = JWT.create()
+                .withSubject("some_username")
+                .withExpiresAt(new Date(System.currentTimeMillis() + EXPIRATION_TIME))
+                .sign(HMAC512("anothersecret".getBytes()));
+
+        verifiedTokenCache.verify(token);
+    }
+
+    @Test(expected = JWTVerificationException.class)
+    public void verifyRejectsExpiredToken() {
+        String token = JWT.create()
+                .withSubject("some_username")
+                .withExpiresAt(new Date(System.currentTimeMillis() - 1000))
+                .sign(HMAC512(SECRET.getBytes()));
+
+        verifiedTokenCache.verify(token);
+    }
+}
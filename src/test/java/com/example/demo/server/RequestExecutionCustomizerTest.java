@@ -0,0 +1,47 @@
+package com.example.demo.server;
+
+import org.junit.Test;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RequestExecutionCustomizerTest {
+
+    private static final boolean VIRTUAL_THREADS_AVAILABLE = Arrays.stream(Thread.class.getMethods())
+            .anyMatch(method -> method.getName().equals("ofVirtual"));
+
+    @Test
+    public void platformModeKeepsTomcatPool() {
+        TomcatServletWebServerFactory factory = new TomcatServletWebServerFactory();
+
+        new RequestExecutionCustomizer(RequestExecutionCustomizer.Mode.PLATFORM).customize(factory);
+
+        assertEquals(0, factory.getTomcatConnectorCustomizers().size());
+    }
+
+    @Test
+    public void virtualModeRunsTasksOnNamedVirtualThreads() throws Exception {
+        if (!VIRTUAL_THREADS_AVAILABLE) {
+            try {
+                RequestExecutionCustomizer.newVirtualThreadPerTaskExecutor();
+                fail("Expected virtual threads to be unavailable");
+            } catch (IllegalStateException e) {
+                assertTrue(e.getMessage().contains("Java 21"));
+            }
+            return;
+        }
+        ExecutorService executor = RequestExecutionCustomizer.newVirtualThreadPerTaskExecutor();
+        try {
+            Future<String> name = executor.submit(() -> Thread.currentThread().getName());
+            assertTrue(name.get().startsWith("http-virtual-"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
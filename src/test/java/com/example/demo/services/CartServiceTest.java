@@ -0,0 +1,147 @@
+package com.example.demo.services;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.CartItemRepository;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.responses.CartView;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "cart.update.mode=DELTA")
+public class CartServiceTest {
+    private static final int THREADS = 4;
+    private static final int ADDS_PER_THREAD = 10;
+
+    @Autowired
+    private CartService cartService;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private UserSummary user;
+
+    private Item item;
+
+    @Before
+    public void setUp() {
+        user = new TransactionTemplate(transactionManager).execute(status -> {
+            Cart cart = cartRepository.save(new Cart());
+            User newUser = new User();
+            newUser.setUsername("cart-" + UUID.randomUUID());
+            newUser.setPassword("hash");
+            newUser.setCart(cart);
+            return UserSummary.of(userRepository.save(newUser));
+        });
+        item = itemRepository.findById(1L).get();
+    }
+
+    @Test
+    public void concurrentDeltaAddsMerge() throws Exception {
+        addConcurrently(cartService);
+
+        Cart cart = cartRepository.findWithItemsById(user.getCartId()).get();
+        assertEquals(1, cart.getItems().size());
+        assertEquals(THREADS * ADDS_PER_THREAD, cart.getItems().get(0).getQuantity());
+        assertEquals(item.getPrice().multiply(BigDecimal.valueOf(THREADS * ADDS_PER_THREAD)), cart.getTotal());
+    }
+
+    @Test
+    public void deltaRemoveTakesOnlyWhatIsInTheCart() {
+        cartService.addItem(user, item, 2);
+        CartView cart = cartService.removeItem(user, item, 5).get();
+
+        assertEquals(0, cart.getItems().size());
+        assertEquals(0, BigDecimal.ZERO.compareTo(cart.getTotal()));
+        assertEquals(0, cartRepository.findWithItemsById(user.getCartId()).get().getItems().size());
+    }
+
+    @Test
+    public void concurrentOptimisticAddsAreRetried() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        CartService optimistic = new CartService(cartRepository, cartItemRepository, transactionManager, registry,
+                Optional.empty(), CartService.UpdateMode.OPTIMISTIC, 100, 5);
+
+        addConcurrently(optimistic);
+
+        Cart cart = cartRepository.findWithItemsById(user.getCartId()).get();
+        assertEquals(THREADS * ADDS_PER_THREAD, cart.getItems().get(0).getQuantity());
+        assertEquals(item.getPrice().multiply(BigDecimal.valueOf(THREADS * ADDS_PER_THREAD)), cart.getTotal());
+        assertEquals(0.0, registry.get("cart.update.failures").counter().count(), 0.0);
+    }
+
+    @Test
+    public void otherIntegrityViolationsAreNotRetried() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        CartService delta = new CartService(cartRepository, cartItemRepository, transactionManager, registry,
+                Optional.empty(), CartService.UpdateMode.DELTA, 100, 5);
+        Item missing = new Item();
+        missing.setId(Long.MAX_VALUE);
+        missing.setPrice(BigDecimal.ONE);
+
+        try {
+            delta.addItem(user, missing, 1);
+            fail("expected the foreign key on the item to reject the line");
+        } catch (DataIntegrityViolationException expected) {
+            // reported as it is, not as a concurrent edit
+        }
+
+        assertEquals(0.0, registry.get("cart.update.conflicts").counter().count(), 0.0);
+    }
+
+    private void addConcurrently(CartService service) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                results.add(executor.submit(() -> {
+                    for (int j = 0; j < ADDS_PER_THREAD; j++) {
+                        service.addItem(user, item, 1);
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
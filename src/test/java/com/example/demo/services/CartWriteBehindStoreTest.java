@@ -0,0 +1,142 @@
+package com.example.demo.services;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.CartRepository;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.responses.CartView;
+import com.example.demo.model.responses.OrderView;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(SpringRunner.class)
+// a single connection, so a checkout that needs a second one fails instead of passing
+@SpringBootTest(properties = {"cart.update.mode=WRITE_BEHIND", "cart.write-behind.flush-interval-millis=600000",
+        "spring.datasource.hikari.maximum-pool-size=1", "spring.datasource.hikari.connection-timeout=2000"})
+public class CartWriteBehindStoreTest {
+    @Autowired
+    private CartService cartService;
+
+    @Autowired
+    private CartWriteBehindStore store;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    private UserSummary user;
+
+    private Item item;
+
+    @Before
+    public void setUp() {
+        user = new TransactionTemplate(transactionManager).execute(status -> {
+            Cart cart = cartRepository.save(new Cart());
+            User newUser = new User();
+            newUser.setUsername("write-behind-" + UUID.randomUUID());
+            newUser.setPassword("hash");
+            newUser.setCart(cart);
+            return UserSummary.of(userRepository.save(newUser));
+        });
+        item = itemRepository.findById(1L).get();
+    }
+
+    @Test
+    public void editsAreCoalescedIntoOneWrite() {
+        double writes = count("cart.write-behind.writes");
+        for (int i = 0; i < 20; i++) {
+            cartService.addItem(user, item, 1);
+        }
+        CartView view = cartService.removeItem(user, item, 5).get();
+
+        assertEquals(15, view.getItems().get(0).getQuantity());
+        assertEquals(0, storedCart().getItems().size());
+
+        store.flushAll();
+
+        Cart stored = storedCart();
+        assertEquals(15, stored.getItems().get(0).getQuantity());
+        assertEquals(item.getPrice().multiply(BigDecimal.valueOf(15)), stored.getTotal());
+        assertEquals(writes + 1, count("cart.write-behind.writes"), 0.0);
+    }
+
+    @Test
+    public void submissionWritesTheCartFirstAndStartsFromTheEmptyCart() {
+        cartService.addItem(user, item, 3);
+
+        OrderView order = orderService.submit(user, null).get();
+        assertEquals(3, order.getItems().get(0).getQuantity());
+
+        CartView cart = cartService.addItem(user, item, 1).get();
+        assertEquals(1, cart.getItems().get(0).getQuantity());
+    }
+
+    @Test
+    public void editDuringCheckoutIsKeptOnTopOfTheEmptiedCart() {
+        double races = count("cart.write-behind.checkout-races");
+        cartService.addItem(user, item, 3);
+
+        OrderView order = new TransactionTemplate(transactionManager).execute(status -> {
+            OrderView submitted = orderService.submit(user, null).get();
+            // not yet committed
+            cartService.addItem(user, item, 1);
+            return submitted;
+        });
+
+        assertEquals(3, order.getItems().get(0).getQuantity());
+        assertEquals(races + 1, count("cart.write-behind.checkout-races"), 0.0);
+        assertEquals(2, cartService.addItem(user, item, 1).get().getItems().get(0).getQuantity());
+        store.flushAll();
+        assertEquals(2, storedCart().getItems().get(0).getQuantity());
+    }
+
+    @Test
+    public void staleCopyIsDiscardedInsteadOfOverwriting() {
+        double conflicts = count("cart.write-behind.conflicts");
+        cartService.addItem(user, item, 2);
+        new TransactionTemplate(transactionManager).execute(status -> cartRepository.addToTotal(user.getCartId(), 100));
+
+        store.flushAll();
+
+        assertEquals(0, storedCart().getItems().size());
+        assertEquals(new BigDecimal("1.00"), storedCart().getTotal());
+        assertEquals(conflicts + 1, count("cart.write-behind.conflicts"), 0.0);
+        assertEquals(1, cartService.addItem(user, item, 1).get().getItems().get(0).getQuantity());
+    }
+
+    private Cart storedCart() {
+        return cartRepository.findWithItemsById(user.getCartId()).get();
+    }
+
+    private double count(String name) {
+        return registry.get(name).counter().count();
+    }
+}
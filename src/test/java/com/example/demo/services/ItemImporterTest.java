@@ -0,0 +1,129 @@
+package com.example.demo.services;
+
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.responses.ImportReport;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "catalog.import.batch-size=2")
+public class ItemImporterTest {
+    @Autowired
+    private ItemImporter itemImporter;
+
+    @Autowired
+    private ItemCatalog itemCatalog;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    public void importCsv() throws IOException {
+        String prefix = "Csv " + UUID.randomUUID() + " ";
+        String csv = "price,name,description\n"
+                + "1.50," + prefix + "Bolt,\"A bolt, zinc plated\"\n"
+                + "2.00," + prefix + "Nut,\"A \"\"hex\"\" nut\nwith two lines\"\n"
+                + "abc," + prefix + "Broken,Not a price\n"
+                + "3.25,,Missing name\n"
+                + "1.75," + prefix + "Bolt,A bolt again\n"
+                + "0.99," + prefix + "Washer,A washer\n";
+
+        ImportReport report = itemImporter.importItems(stream(csv), ItemImporter.Format.CSV);
+
+        assertEquals(6, report.getProcessed());
+        assertEquals(2, report.getRejected());
+        assertEquals(5, report.getRejections().get(0).getLine());
+        assertEquals(6, report.getRejections().get(1).getLine());
+        assertEquals(4, report.getInserted() + report.getUpdated());
+
+        List<Item> bolts = itemCatalog.findByName(prefix + "Bolt");
+        assertEquals(1, bolts.size());
+        assertEquals(new BigDecimal("1.75"), bolts.get(0).getPrice());
+        assertEquals("A \"hex\" nut\nwith two lines", itemCatalog.findByName(prefix + "Nut").get(0).getDescription());
+    }
+
+    @Test
+    public void importNdjsonUpsertsByName() throws IOException {
+        String name = "Ndjson " + UUID.randomUUID();
+        String first = "{\"name\":\"" + name + "\",\"price\":4.99,\"description\":\"First\"}\n";
+        String second = "{\"name\":\"" + name + "\",\"price\":\"5.49\",\"description\":\"Second\"}\n"
+                + "not json\n"
+                + "{\"name\":\"" + name + " cheap\",\"price\":-1,\"description\":\"Negative\"}\n";
+
+        ImportReport inserted = itemImporter.importItems(stream(first), ItemImporter.Format.NDJSON);
+        ImportReport updated = itemImporter.importItems(stream(second), ItemImporter.Format.NDJSON);
+
+        assertEquals(1, inserted.getInserted());
+        assertEquals(0, updated.getInserted());
+        assertEquals(1, updated.getUpdated());
+        assertEquals(2, updated.getRejected());
+
+        List<Item> items = itemCatalog.findByName(name);
+        assertEquals(1, items.size());
+        assertEquals(new BigDecimal("5.49"), items.get(0).getPrice());
+        assertEquals("Second", items.get(0).getDescription());
+        assertEquals(1, itemCatalog.search(name, 10).size());
+    }
+
+    @Test
+    public void readDuringABatchIsNotCachedPastItsCommit() throws Exception {
+        String name = "Batch " + UUID.randomUUID();
+        itemImporter.importItems(stream("{\"name\":\"" + name + "\",\"price\":1.00,\"description\":\"Old\"}\n"),
+                ItemImporter.Format.NDJSON);
+        Item stored = itemCatalog.findByName(name).get(0);
+
+        new TransactionTemplate(transactionManager).execute(status -> {
+            Item update = new Item();
+            update.setId(stored.getId());
+            update.setName(name);
+            update.setPrice(new BigDecimal("2.00"));
+            update.setDescription("New");
+            itemCatalog.saveAll(Collections.singletonList(update));
+            // another request reads the committed row while the batch is still open
+            List<Item> concurrent = CompletableFuture.supplyAsync(() -> itemCatalog.findByName(name)).join();
+            assertEquals(new BigDecimal("1.00"), concurrent.get(0).getPrice());
+            return null;
+        });
+
+        assertEquals(new BigDecimal("2.00"), itemCatalog.findByName(name).get(0).getPrice());
+    }
+
+    @Test
+    public void rolledBackBatchIsNotIndexed() {
+        String name = "Rolled back " + UUID.randomUUID();
+
+        new TransactionTemplate(transactionManager).execute(status -> {
+            Item item = new Item();
+            item.setName(name);
+            item.setPrice(BigDecimal.ONE);
+            item.setDescription("Never committed");
+            itemCatalog.saveAll(Collections.singletonList(item));
+            status.setRollbackOnly();
+            return null;
+        });
+
+        assertTrue(itemCatalog.search(name, 10).isEmpty());
+        assertTrue(itemCatalog.findByName(name).isEmpty());
+    }
+
+    private static ByteArrayInputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
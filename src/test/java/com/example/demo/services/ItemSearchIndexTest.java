@@ -0,0 +1,61 @@
+package com.example.demo.services;
+
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.repositories.ItemRepository;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+public class ItemSearchIndexTest {
+
+    private final ItemRepository itemRepository = mock(ItemRepository.class);
+
+    private final ItemSearchIndex searchIndex = new ItemSearchIndex(itemRepository);
+
+    @Test
+    public void itemIndexedDuringARebuildIsKept() {
+        Item bolt = item(1L, "Bolt");
+        Item nut = item(2L, "Nut");
+        given(itemRepository.findAll()).willAnswer(invocation -> {
+            // saved after the query read the table, but before the swap
+            searchIndex.index(nut);
+            return new ArrayList<>(Collections.singletonList(bolt));
+        });
+
+        searchIndex.rebuild();
+
+        assertEquals(1, searchIndex.search("bolt", 10).size());
+        assertEquals(1, searchIndex.search("nut", 10).size());
+    }
+
+    @Test
+    public void itemRemovedDuringARebuildStaysRemoved() {
+        Item bolt = item(1L, "Bolt");
+        List<Item> all = Collections.singletonList(bolt);
+        given(itemRepository.findAll()).willReturn(all);
+        searchIndex.rebuild();
+
+        given(itemRepository.findAll()).willAnswer(invocation -> {
+            searchIndex.remove(1L);
+            return all;
+        });
+        searchIndex.rebuild();
+
+        assertTrue(searchIndex.search("bolt", 10).isEmpty());
+    }
+
+    private static Item item(long id, String name) {
+        Item item = new Item();
+        item.setId(id);
+        item.setName(name);
+        item.setDescription("A " + name.toLowerCase());
+        return item;
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.demo.services;
+
+import com.example.demo.model.responses.ItemPage;
+import com.example.demo.model.responses.ItemView;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class NonBlockingItemWriterTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ItemCatalog itemCatalog = mock(ItemCatalog.class);
+
+    private final AsyncContext context = mock(AsyncContext.class);
+
+    private final ThrottledOutputStream out = new ThrottledOutputStream();
+
+    private NonBlockingItemWriter writer;
+
+    @Before
+    public void setUp() throws IOException {
+        ServletResponse response = mock(ServletResponse.class);
+        when(response.getOutputStream()).thenReturn(out);
+        when(context.getResponse()).thenReturn(response);
+        when(itemCatalog.findPage(0, 2)).thenReturn(new ItemPage(Arrays.asList(item(1), item(2)), 2L));
+        when(itemCatalog.findPage(2, 2)).thenReturn(new ItemPage(Arrays.asList(item(3)), null));
+
+        writer = new NonBlockingItemWriter(itemCatalog, objectMapper, Runnable::run, 2);
+        writer.start(context);
+    }
+
+    @Test
+    public void writesEveryPageAsOneArray() throws IOException {
+        writer.onWritePossible();
+
+        JsonNode items = objectMapper.readTree(out.toByteArray());
+        assertEquals(3, items.size());
+        assertEquals(3, items.get(2).get("id").asLong());
+        verify(context).complete();
+    }
+
+    @Test
+    public void readsNextPageOnlyOnceTheSocketTakesMore() throws IOException {
+        out.remainingWrites = 1;
+        writer.onWritePossible();
+
+        verify(itemCatalog).findPage(0, 2);
+        verify(itemCatalog, never()).findPage(2, 2);
+
+        out.remainingWrites = 1;
+        writer.onWritePossible();
+
+        verify(itemCatalog, times(1)).findPage(2, 2);
+        verify(context, never()).complete();
+
+        out.remainingWrites = Integer.MAX_VALUE;
+        writer.onWritePossible();
+
+        assertEquals(3, objectMapper.readTree(out.toByteArray()).size());
+        verify(context).complete();
+    }
+
+    @Test
+    public void stopsAfterAClientError() throws IOException {
+        out.remainingWrites = 1;
+        writer.onWritePossible();
+        writer.onError(new IOException("Connection reset"));
+
+        out.remainingWrites = Integer.MAX_VALUE;
+        writer.onWritePossible();
+
+        verify(itemCatalog, never()).findPage(2, 2);
+        verify(context, times(1)).complete();
+    }
+
+    private static ItemView item(long id) {
+        return new ItemView(id, "Item " + id, BigDecimal.ONE, "Description " + id);
+    }
+
+    /**
+     * Accepts {@code remainingWrites} more writes before reporting that the socket is
+     * full, like a client that stopped reading.
+     */
+    private static class ThrottledOutputStream extends ServletOutputStream {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        int remainingWrites = Integer.MAX_VALUE;
+
+        @Override
+        public boolean isReady() {
+            return remainingWrites > 0;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+        }
+
+        @Override
+        public void write(int b) {
+            remainingWrites--;
+            bytes.write(b);
+        }
+
+        @Override
+        public void write(byte[] b) {
+            remainingWrites--;
+            bytes.write(b, 0, b.length);
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.example.demo.services;
+
+import com.example.demo.model.persistence.Cart;
+import com.example.demo.model.persistence.Item;
+import com.example.demo.model.persistence.User;
+import com.example.demo.model.persistence.repositories.UserRepository;
+import com.example.demo.model.responses.CartView;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class OffHeapCartStorageTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ItemCatalog itemCatalog = mock(ItemCatalog.class);
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+
+    /** Cart id to owning user id, as the database has it. */
+    private final Map<Long, Long> owners = new HashMap<>();
+
+    private final Item widget = item(1L, "Widget", "2.99");
+
+    private final Item gadget = item(2L, "Gadget", "10.00");
+
+    private final Item gizmo = item(3L, "Gizmo", "0.50");
+
+    @Before
+    public void setUp() {
+        for (Item item : new Item[] {widget, gadget, gizmo}) {
+            when(itemCatalog.findById(item.getId())).thenReturn(Optional.of(item));
+        }
+        when(userRepository.findByCartIdIn(any())).thenAnswer(invocation -> {
+            List<User> users = new ArrayList<>();
+            for (Long cartId : invocation.<Collection<Long>>getArgument(0)) {
+                if (owners.containsKey(cartId)) {
+                    Cart cart = new Cart();
+                    cart.setId(cartId);
+                    User user = new User();
+                    user.setId(owners.get(cartId));
+                    user.setCart(cart);
+                    users.add(user);
+                }
+            }
+            return users;
+        });
+    }
+
+    @Test
+    public void keepsLinesAndTotalPerCart() throws IOException {
+        OffHeapCartStorage storage = storage(null);
+
+        storage.addItem(user(5L), widget, 2);
+        storage.addItem(user(5L), gadget, 1);
+        storage.addItem(user(4099L), gizmo, 4);
+        CartView cart = storage.removeItem(user(5L), widget, 1).get();
+
+        assertEquals(2, cart.getItems().size());
+        assertEquals(1, cart.getItems().get(0).getQuantity());
+        assertEquals(new BigDecimal("12.99"), cart.getTotal());
+        assertEquals(new BigDecimal("2.00"), storage.findForCheckout(user(4099L)).get().getTotal());
+        assertEquals(0, storage.findForCheckout(user(6L)).get().getItems().size());
+        assertFalse(storage.addItem(user(null), widget, 1).isPresent());
+    }
+
+    @Test
+    public void rejectsCartsOverTheLineLimit() throws IOException {
+        OffHeapCartStorage storage = storage(null);
+        storage.addItem(user(1L), widget, 1);
+        storage.addItem(user(1L), gadget, 1);
+
+        try {
+            storage.addItem(user(1L), gizmo, 1);
+            fail("expected the third line to be rejected");
+        } catch (CartCapacityExceededException expected) {
+            // the cart is left as it was
+        }
+        assertEquals(2, storage.findForCheckout(user(1L)).get().getItems().size());
+    }
+
+    @Test
+    public void checkoutWithoutTransactionEmptiesTheCartAtOnce() throws IOException {
+        OffHeapCartStorage storage = storage(null);
+        storage.addItem(user(7L), widget, 3);
+
+        Cart cart = storage.findForCheckout(user(7L)).get();
+        storage.checkedOut(user(7L), cart);
+
+        assertEquals(3, cart.getItems().get(0).getQuantity());
+        assertTrue(storage.findForCheckout(user(7L)).get().getItems().isEmpty());
+    }
+
+    @Test
+    public void secondCheckoutOfTheSameCartIsRejected() throws IOException {
+        OffHeapCartStorage storage = storage(null);
+        storage.addItem(user(9L), widget, 1);
+        Cart first = storage.findForCheckout(user(9L)).get();
+        Cart second = storage.findForCheckout(user(9L)).get();
+
+        storage.checkedOut(user(9L), first);
+        try {
+            storage.checkedOut(user(9L), second);
+            fail("expected the second checkout to conflict");
+        } catch (ConcurrencyFailureException expected) {
+            // the second submission rolls back
+        }
+        assertTrue(storage.findForCheckout(user(9L)).get().getItems().isEmpty());
+    }
+
+    @Test
+    public void itemAddedDuringCheckoutIsNotCleared() throws IOException {
+        OffHeapCartStorage storage = storage(null);
+        storage.addItem(user(11L), widget, 1);
+        Cart cart = storage.findForCheckout(user(11L)).get();
+        storage.addItem(user(11L), gadget, 1);
+
+        try {
+            storage.checkedOut(user(11L), cart);
+            fail("expected the changed cart to conflict");
+        } catch (ConcurrencyFailureException expected) {
+            // the submission rolls back and can be retried with both lines
+        }
+        assertEquals(2, storage.findForCheckout(user(11L)).get().getItems().size());
+    }
+
+    @Test
+    public void rolledBackCheckoutPutsTheLinesBack() throws IOException {
+        OffHeapCartStorage storage = storage(null);
+        storage.addItem(user(12L), widget, 2);
+        Cart cart = storage.findForCheckout(user(12L)).get();
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            storage.checkedOut(user(12L), cart);
+            assertTrue(storage.findForCheckout(user(12L)).get().getItems().isEmpty());
+            storage.addItem(user(12L), widget, 1);
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals(3, storage.findForCheckout(user(12L)).get().getItems().get(0).getQuantity());
+    }
+
+    @Test
+    public void snapshotIsRestoredOnStartup() throws Exception {
+        File snapshot = new File(folder.getRoot(), "carts.snapshot");
+        OffHeapCartStorage storage = storage(snapshot);
+        storage.addItem(user(3L), widget, 2);
+        storage.addItem(user(3L), gadget, 1);
+        storage.addItem(user(10000L), gizmo, 5);
+        storage.addItem(user(8L), gizmo, 1);
+        storage.removeItem(user(8L), gizmo, 1);
+        storage.destroy();
+        owners.put(3L, 1L);
+        owners.put(10000L, 1L);
+        owners.put(8L, 1L);
+
+        OffHeapCartStorage restored = storage(snapshot);
+
+        assertEquals(new BigDecimal("15.98"), restored.findForCheckout(user(3L)).get().getTotal());
+        assertEquals(5, restored.findForCheckout(user(10000L)).get().getItems().get(0).getQuantity());
+        assertTrue(restored.findForCheckout(user(8L)).get().getItems().isEmpty());
+    }
+
+    @Test
+    public void cartOfAnotherUserIsNotRestored() throws Exception {
+        File snapshot = new File(folder.getRoot(), "carts.snapshot");
+        OffHeapCartStorage storage = storage(snapshot);
+        storage.addItem(user(3L), widget, 2);
+        storage.addItem(user(4L), gadget, 1);
+        storage.destroy();
+        // the database was reset and cart 4 now belongs to someone else
+        owners.put(3L, 1L);
+        owners.put(4L, 2L);
+
+        OffHeapCartStorage restored = storage(snapshot);
+
+        assertEquals(2, restored.findForCheckout(user(3L)).get().getItems().get(0).getQuantity());
+        assertTrue(restored.findForCheckout(user(2L, 4L)).get().getItems().isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void snapshotsNeedAPersistentDatabase() throws IOException {
+        new OffHeapCartStorage(itemCatalog, userRepository, new SimpleMeterRegistry(), 2, 4096,
+                new File(folder.getRoot(), "carts.snapshot").getPath(), 3600, "jdbc:h2:mem:bootapp");
+    }
+
+    private OffHeapCartStorage storage(File snapshot) throws IOException {
+        return new OffHeapCartStorage(itemCatalog, userRepository, new SimpleMeterRegistry(), 2, 4096,
+                snapshot == null ? "" : snapshot.getPath(), 3600, "jdbc:h2:file:./carts");
+    }
+
+    private static UserSummary user(Long cartId) {
+        return user(1L, cartId);
+    }
+
+    private static UserSummary user(long userId, Long cartId) {
+        return new UserSummary(userId, "off-heap-" + cartId, "hash", cartId);
+    }
+
+    private static Item item(Long id, String name, String price) {
+        Item item = new Item();
+        item.setId(id);
+        item.setName(name);
+        item.setPrice(new BigDecimal(price));
+        return item;
+    }
+}
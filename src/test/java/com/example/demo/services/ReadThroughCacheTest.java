@@ -0,0 +1,42 @@
+package com.example.demo.services;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+
+public class ReadThroughCacheTest {
+
+    @Test
+    public void loadedValueIsCached() {
+        AtomicInteger loads = new AtomicInteger();
+        ReadThroughCache<String, Integer> cache = new ReadThroughCache<>(Caffeine.newBuilder().recordStats().build(),
+                key -> loads.incrementAndGet());
+
+        assertEquals(1, cache.get("a").intValue());
+        assertEquals(1, cache.get("a").intValue());
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.stats().hitCount());
+    }
+
+    @Test
+    public void valueLoadedDuringAnInvalidationIsNotKept() {
+        AtomicInteger loads = new AtomicInteger();
+        AtomicReference<ReadThroughCache<String, Integer>> self = new AtomicReference<>();
+        ReadThroughCache<String, Integer> cache = new ReadThroughCache<>(Caffeine.newBuilder().build(), key -> {
+            if (loads.incrementAndGet() == 1) {
+                // a write commits and invalidates while the first query is running
+                self.get().invalidateAll();
+            }
+            return loads.get();
+        });
+        self.set(cache);
+
+        assertEquals(1, cache.get("a").intValue());
+        assertEquals(2, cache.get("a").intValue());
+        assertEquals(2, cache.get("a").intValue());
+    }
+}